@@ -0,0 +1,120 @@
+package com.example.soilmonitor
+
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.withContext
+import kotlin.math.roundToInt
+
+/** Raw calibration of one plant's moisture sensor */
+data class PlantThresholds(val dry: Float, val wet: Float)
+
+/** Analytics of one plant; [latest] is NaN and [percent] null without a current reading */
+class PlantStats(
+    val plant: Int,
+    val latest: Float,
+    val percent: Int?,
+    val forecast: DryForecast?,
+    /** Epoch of the minimum of the last watering in the past [AnalyticsEngine.DIP_LOOKBACK] */
+    val lastDip: Long?,
+    val min: Float,
+    val max: Float,
+    /** Raw moisture over the last hour, day and week, in [RollingIndex.WINDOWS] order */
+    val rolling: List<RollingStats>
+)
+
+/** Analytics of one surrounding channel (temperature, humidity, …) */
+class ChannelStats(
+    val channel: Int,
+    val latest: Float,
+    val min: Float,
+    val max: Float,
+    /** In [RollingIndex.WINDOWS] order */
+    val rolling: List<RollingStats>
+)
+
+/** One combined result of [AnalyticsEngine.compute] */
+class AnalyticsSnapshot(
+    val plants: List<PlantStats>,
+    val channels: List<ChannelStats>
+)
+
+/**
+ * Runs the per-channel analytics — percent conversion, dry-hit forecast, dip
+ * detection, value range and rolling-window statistics — for every plant and surrounding channel as
+ * parallel jobs on [Dispatchers.Default], which is bounded by the CPU count.
+ *
+ * The heavy state lives in the process-wide incremental trackers, each with
+ * its own lock, so a recompute after a poll only walks the new rows and the
+ * channels never wait on each other.
+ */
+object AnalyticsEngine {
+
+    const val DIP_LOOKBACK = 5 * 86_400L
+
+    /** Surrounding channels, in the order the Surroundings screen shows them */
+    val SURROUNDINGS = intArrayOf(
+        SensorChannels.of("sensor_temp"), SensorChannels.of("sensor_hu"),
+        SensorChannels.of("sensor_co2"), SensorChannels.of("sensor_ph"),
+        SensorChannels.of("sensor_ppm"), SensorChannels.of("sensor_tc")
+    )
+
+    private val ranges = TrackerIndex { channel: Int -> RangeTracker(channel) }
+
+    suspend fun compute(
+        series: SensorSeries,
+        plants: List<PlantThresholds>,
+        surroundings: IntArray = SURROUNDINGS
+    ): AnalyticsSnapshot = withContext(Dispatchers.Default) {
+        val plantJobs = plants.mapIndexed { i, t -> async { plantStats(series, i, t) } }
+        val channelJobs = surroundings.map { c -> async { channelStats(series, c) } }
+        AnalyticsSnapshot(plantJobs.awaitAll(), channelJobs.awaitAll())
+    }
+
+    private fun plantStats(series: SensorSeries, plant: Int, t: PlantThresholds): PlantStats {
+        val channel = SensorChannels.moisture(plant)
+        val raw = latest(series, channel)
+        val percent = if (raw.isNaN() || raw < 0) null else {
+            val ratio = ((raw - t.dry) / (t.wet - t.dry)).coerceIn(0f, 1f)
+            (ratio * 100).roundToInt()
+        }
+        val since = System.currentTimeMillis() / 1000 - DIP_LOOKBACK
+        val (min, max) = ranges.query(series, channel) { it.min to it.max }
+        return PlantStats(
+            plant = plant,
+            latest = raw,
+            percent = percent,
+            forecast = ForecastIndex.forecast(series, plant, t.wet, t.dry),
+            lastDip = WateringIndex.last(series, plant, t.wet, since)?.minEpoch,
+            min = min,
+            max = max,
+            rolling = RollingIndex.stats(series, channel)
+        )
+    }
+
+    private fun channelStats(series: SensorSeries, channel: Int): ChannelStats {
+        val (min, max) = ranges.query(series, channel) { it.min to it.max }
+        return ChannelStats(
+            channel, latest(series, channel), min, max, RollingIndex.stats(series, channel)
+        )
+    }
+
+    /** Value of [channel] in the newest row, NaN if that row has none */
+    private fun latest(series: SensorSeries, channel: Int): Float =
+        if (series.isEmpty()) Float.NaN else series.value(channel, series.size - 1)
+
+    /** Running min / max of every valid reading of one channel (NaN before the first) */
+    private class RangeTracker(private val channel: Int) : ReadingTracker(channel) {
+        var min = Float.NaN
+            private set
+        var max = Float.NaN
+            private set
+
+        override fun valid(v: Float) = SensorChannels.isValid(channel, v)
+
+        override fun accept(epoch: Long, v: Float) {
+            if (min.isNaN() || v < min) min = v
+            if (max.isNaN() || v > max) max = v
+        }
+    }
+}
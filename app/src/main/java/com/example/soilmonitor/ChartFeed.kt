@@ -0,0 +1,234 @@
+package com.example.soilmonitor
+
+import com.github.mikephil.charting.data.Entry
+
+/** Resolution a [ChartFeed] walks the log at */
+enum class ChartTier(
+    /** Seconds one x position stands for (rows are logged every 10 minutes) */
+    val seconds: Long
+) {
+    /** Every row */
+    ROWS(SlotSeries.SLOT_SECONDS),
+    /** The 10-minute raster, gaps keeping their width */
+    SLOTS(SlotSeries.SLOT_SECONDS),
+    /** Mean of every hour in [SensorSeries.hourly] */
+    HOURLY(3600L),
+    /** Mean of every local day in [SensorSeries.daily] */
+    DAILY(86_400L);
+
+    companion object {
+        /**
+         * The coarsest rollup of [series] that still has at least [pixels]
+         * buckets from [since] on, i.e. still fills a chart that wide; [fine]
+         * when neither does.
+         */
+        fun pick(series: SensorSeries, since: Long, pixels: Int, fine: ChartTier): ChartTier =
+            when {
+                series.daily.size - series.daily.indexAtOrAfter(since) >= pixels -> DAILY
+                series.hourly.size - series.hourly.indexAtOrAfter(since) >= pixels -> HOURLY
+                else -> fine
+            }
+    }
+}
+
+/**
+ * Turns a growing [SensorSeries] into chart entries incrementally. Each
+ * [feed] walks only the rows, 10-minute slots or rollup buckets (see [tier])
+ * added since the previous call, so a poll that brings in N rows costs O(N)
+ * however much history is already on screen.
+ *
+ * Rows (or slots, buckets) before [since] are skipped by binary search (slot
+ * positions are computed directly), so a short window over a long history
+ * costs only the window. With [hideNight] rows under the series' night mask
+ * are skipped too, a 64-row word at a time; daily buckets are never hidden.
+ * Every remaining row, slot or bucket with an accepted value in at least one
+ * of [channels] becomes the next x position of [timeline]; buckets plot their
+ * mean. On [ChartTier.SLOTS] empty slots between two used slots still take a
+ * position so gaps keep their width, and with [forwardFill] each channel
+ * repeats its last value across them.
+ *
+ * The newest slot or bucket can still receive readings, so its entries are
+ * provisional: [Batch.open] counts them and the next batch's [Batch.replace]
+ * supersedes them.
+ */
+class ChartFeed(
+    private val channels: IntArray,
+    val tier: ChartTier,
+    private val forwardFill: Boolean,
+    private val since: Long,
+    private val hideNight: Boolean,
+    private val accept: (Float) -> Boolean,
+    val timeline: ChartTimeline
+) {
+    /** New entries per channel, indexed like the feed's channels */
+    class Batch(
+        val entries: List<List<Entry>>,
+        /** Trailing entries of the previous batch that these replace */
+        val replace: IntArray,
+        /** Trailing entries of this batch that belong to the still-open slot or bucket */
+        val open: IntArray
+    )
+
+    private var lineage = 0L
+    private var rows = 0
+    private var slots = 0
+    private var buckets = 0
+
+    /* ---- slot and bucket walk state ---- */
+    private var pending = LongArray(16)      // empty slots waiting for the next used one
+    private var pendingCount = 0
+    private var tailPending = false          // the last walked slot sits in pending
+    private var started = false              // a position has been emitted
+    private var openPos = -1                 // timeline position of the open slot or bucket
+    private val open = IntArray(channels.size)
+    private val prev = FloatArray(channels.size) { Float.NaN }
+    private val prevClosed = FloatArray(channels.size) { Float.NaN }
+
+    /**
+     * True if [series] extends the series fed so far, i.e. [feed] can continue
+     * it: a later snapshot of the same store. O(1), nothing is decoded.
+     */
+    fun canFeed(series: SensorSeries): Boolean =
+        rows == 0 && lineage == 0L || series.lineage == lineage && series.size >= rows
+
+    /**
+     * Consume everything [series] has beyond the previous call. [tick] is
+     * invoked every few thousand rows so a caller can cancel a long first feed.
+     */
+    fun feed(series: SensorSeries, tick: () -> Unit = {}): Batch {
+        val out = List(channels.size) { ArrayList<Entry>() }
+        val replace = IntArray(channels.size)
+        when (tier) {
+            ChartTier.ROWS -> feedRows(series, out, tick)
+            ChartTier.SLOTS -> feedSlots(series.slots, out, replace, tick)
+            else -> feedBuckets(rollup(series), out, replace, tick)
+        }
+        rows = series.size
+        lineage = series.lineage
+        return Batch(out, replace, open.copyOf())
+    }
+
+    private fun rollup(series: SensorSeries): RollupSeries =
+        if (tier == ChartTier.DAILY) series.daily else series.hourly
+
+    /** Call [action] for every position in [from, to) not under [night] (if given) */
+    private inline fun visit(from: Int, to: Int, night: RowMask?, action: (Int) -> Unit) {
+        if (night != null) night.forEachClear(from, to, action)
+        else for (i in from until to) action(i)
+    }
+
+    private fun feedRows(series: SensorSeries, out: List<MutableList<Entry>>, tick: () -> Unit) {
+        val window = series.slice(since)
+        val night = if (hideNight) series.nightMask() else null
+        val reader = series.reader()
+        visit(maxOf(rows, window.from), window.to, night) { r ->
+            if (r and 4095 == 0) tick()
+            val e = reader.epochAt(r)
+            var pos = -1
+            for (i in channels.indices) {
+                val v = reader.value(channels[i], r)
+                if (!accept(v)) continue
+                if (pos < 0) pos = timeline.add(e)
+                out[i] += Entry(pos.toFloat(), v)
+            }
+        }
+    }
+
+    private fun feedSlots(
+        s: SlotSeries, out: List<MutableList<Entry>>, replace: IntArray, tick: () -> Unit
+    ) {
+        if (s.isEmpty()) return
+
+        /* the last walked slot may have received readings since: walk it again */
+        var from = slots
+        val reuse = openPos
+        if (slots > 0) {
+            from = slots - 1
+            if (tailPending) pendingCount--
+            if (reuse >= 0) {
+                open.copyInto(replace)
+                prevClosed.copyInto(prev)
+            }
+        }
+        tailPending = false
+        openPos = -1
+        open.fill(0)
+
+        val night = if (hideNight) s.nightMask() else null
+        val reader = s.reader()
+        visit(maxOf(from, s.firstAtOrAfter(since)), s.size, night) { p ->
+            if (p and 4095 == 0) tick()
+            val last = p == s.size - 1
+            if (last) prev.copyInto(prevClosed)
+            val e = s.epochAt(p)
+
+            var used = false
+            for (c in channels) if (accept(reader.value(c, p))) used = true
+            if (!used) {
+                if (started) {
+                    if (pendingCount == pending.size) pending = pending.copyOf(pendingCount * 2)
+                    pending[pendingCount++] = e
+                    tailPending = last
+                }
+                return@visit
+            }
+
+            /* a used slot: the empty ones before it take their positions first */
+            for (k in 0 until pendingCount) {
+                val pos = timeline.add(pending[k]).toFloat()
+                if (forwardFill) {
+                    for (i in channels.indices) if (!prev[i].isNaN()) out[i] += Entry(pos, prev[i])
+                }
+            }
+            pendingCount = 0
+            started = true
+
+            val pos = if (p == from && reuse >= 0) reuse else timeline.add(e)
+            for (i in channels.indices) {
+                val v = reader.value(channels[i], p)
+                val w = if (accept(v)) v else if (forwardFill) prev[i] else Float.NaN
+                if (w.isNaN()) continue
+                out[i] += Entry(pos.toFloat(), w)
+                prev[i] = w
+                if (last) open[i] = 1
+            }
+            if (last) openPos = pos
+        }
+        slots = s.size
+    }
+
+    private fun feedBuckets(
+        r: RollupSeries, out: List<MutableList<Entry>>, replace: IntArray, tick: () -> Unit
+    ) {
+        if (r.isEmpty()) return
+
+        /* the last walked bucket may have received readings since: walk it again */
+        var from = buckets
+        val reuse = openPos
+        if (buckets > 0) {
+            from = buckets - 1
+            if (reuse >= 0) open.copyInto(replace)
+        }
+        openPos = -1
+        open.fill(0)
+
+        val night = if (hideNight && tier != ChartTier.DAILY) r.nightMask() else null
+        val reader = r.reader()
+        visit(maxOf(from, r.indexAtOrAfter(since)), r.size, night) { b ->
+            if (b and 4095 == 0) tick()
+            val last = b == r.size - 1
+            var pos = -1
+            for (i in channels.indices) {
+                val v = reader.mean(channels[i], b)
+                if (!accept(v)) continue
+                if (pos < 0) {
+                    pos = if (b == from && reuse >= 0) reuse else timeline.add(reader.epochAt(b))
+                }
+                out[i] += Entry(pos.toFloat(), v)
+                if (last) open[i] = 1
+            }
+            if (last && pos >= 0) openPos = pos
+        }
+        buckets = r.size
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.soilmonitor
+
+import android.view.MotionEvent
+import com.github.mikephil.charting.charts.LineChart
+import com.github.mikephil.charting.data.Entry
+import com.github.mikephil.charting.data.LineDataSet
+import com.github.mikephil.charting.listener.ChartTouchListener
+import com.github.mikephil.charting.listener.OnChartGestureListener
+
+/**
+ * Keeps the datasets of [chart] decimated to its pixel width: after every
+ * zoom or pan gesture each bound set is re-queried from its [LodSeries] for
+ * the visible x window, so drawing cost stays flat however long the history.
+ */
+class ChartLod(private val chart: LineChart) : OnChartGestureListener {
+
+    private val bound = mutableListOf<Pair<LineDataSet, LodSeries>>()
+
+    init {
+        chart.onChartGestureListener = this
+    }
+
+    /**
+     * Take over [sets], which must already be part of the chart's data and
+     * still hold their full-resolution entries, and show their decimated view.
+     */
+    fun bind(sets: List<LineDataSet>) {
+        bound.clear()
+        sets.forEach { bound += it to LodSeries(it.values) }
+        update()
+    }
+
+    /**
+     * Extend bound [set] with [entries] (replacing its last [dropLast] points)
+     * without touching the rest of its history. Call [update] once all sets
+     * of a batch have been extended.
+     */
+    fun append(set: LineDataSet, entries: List<Entry>, dropLast: Int = 0) {
+        bound.firstOrNull { it.first === set }?.second?.append(entries, dropLast)
+    }
+
+    /** Re-query every bound set for the current viewport */
+    fun update() {
+        if (bound.isEmpty()) return
+        val pixels = chart.viewPortHandler.contentWidth().toInt()
+        val from = chart.lowestVisibleX
+        val to = chart.highestVisibleX
+        bound.forEach { (set, lod) -> set.values = lod.view(from, to, pixels) }
+        chart.data?.notifyDataChanged()
+        chart.notifyDataSetChanged()
+        chart.invalidate()
+    }
+
+    /* ---- gesture hooks: refresh once the viewport has settled ---- */
+    override fun onChartGestureEnd(me: MotionEvent?, gesture: ChartTouchListener.ChartGesture?) = update()
+    override fun onChartDoubleTapped(me: MotionEvent?) = update()
+
+    override fun onChartGestureStart(me: MotionEvent?, gesture: ChartTouchListener.ChartGesture?) {}
+    override fun onChartLongPressed(me: MotionEvent?) {}
+    override fun onChartSingleTapped(me: MotionEvent?) {}
+    override fun onChartFling(me1: MotionEvent?, me2: MotionEvent?, velocityX: Float, velocityY: Float) {}
+    override fun onChartScale(me: MotionEvent?, scaleX: Float, scaleY: Float) {}
+    override fun onChartTranslate(me: MotionEvent?, dX: Float, dY: Float) {}
+}
@@ -0,0 +1,66 @@
+package com.example.soilmonitor
+
+import com.github.mikephil.charting.components.LimitLine
+
+/**
+ * Records the epoch behind every x position of a chart as it is built and
+ * later extended, and collects a "dd MMM" day separator into [separators] whenever the
+ * local date changes (pass null to skip separators). Touches no views, so a
+ * timeline can be built off the main thread.
+ *
+ * Single writer; readers on other threads (the axis formatter draws on the
+ * main thread) see every position below [count]: an epoch and a grown array
+ * are stored before the volatile [count] that publishes them.
+ */
+class ChartTimeline(
+    private val clock: LocalClock,
+    private val separators: MutableList<LimitLine>?,
+    capacity: Int = 256
+) {
+    @Volatile
+    private var epochs = LongArray(capacity.coerceAtLeast(16))
+    private var lastDay = Long.MIN_VALUE
+
+    @Volatile
+    var count = 0
+        private set
+
+    /** Append [epoch] as the next x position and return that position */
+    fun add(epoch: Long): Int {
+        if (separators != null) {
+            val day = clock.day(epoch)
+            if (day != lastDay) {
+                separators += LimitLine(count.toFloat(), clock.formatDate(epoch))
+                lastDay = day
+            }
+        }
+        val pos = count
+        var a = epochs
+        if (pos == a.size) {
+            a = a.copyOf(pos * 2)
+            a[pos] = epoch
+            epochs = a
+        } else {
+            a[pos] = epoch
+        }
+        count = pos + 1                      // publishes the epoch
+        return pos
+    }
+
+    /** Epoch of position [pos], which must be below a [count] already read */
+    fun epochAt(pos: Int): Long = epochs[pos]
+
+    /** First position whose epoch is at or after [epoch], or [count] if none */
+    fun positionAt(epoch: Long): Int {
+        var hi = count
+        val a = epochs
+        var lo = 0
+        while (lo < hi) {
+            val mid = (lo + hi) ushr 1
+            if (a[mid] < epoch) lo = mid + 1 else hi = mid
+        }
+        return lo
+    }
+
+    fun formatter() = EpochAxisFormatter(this, clock)
+}
@@ -0,0 +1,325 @@
+package com.example.soilmonitor
+
+/**
+ * Gorilla-style encodings for one block of a column, packed MSB-first into a
+ * [LongArray]:
+ *
+ * - floats: the first value raw, then each value XOR-ed with the previous
+ *   one — "0" when equal, else the meaningful bits of the XOR, reusing the
+ *   previous leading / trailing-zero window when it fits. Slowly changing ADC
+ *   readings (`sensor_u*` hovers around 300–420) cost a few bits each, and a
+ *   column that is NaN throughout costs one bit per row.
+ * - epochs: the first value raw, then the delta-of-delta in a variable-width
+ *   bucket — "0" for the steady 10-minute cadence.
+ */
+internal object Gorilla {
+
+    fun encodeFloats(src: FloatArray, n: Int): LongArray {
+        val w = BitWriter()
+        if (n == 0) return w.finish()
+        var prev = java.lang.Float.floatToRawIntBits(src[0])
+        w.write(prev.toLong(), 32)
+        var prevLead = -1
+        var prevTrail = 0
+        for (i in 1 until n) {
+            val bits = java.lang.Float.floatToRawIntBits(src[i])
+            val x = bits xor prev
+            prev = bits
+            if (x == 0) {
+                w.write(0, 1)
+                continue
+            }
+            val lead = Integer.numberOfLeadingZeros(x).coerceAtMost(31)
+            val trail = Integer.numberOfTrailingZeros(x)
+            if (prevLead >= 0 && lead >= prevLead && trail >= prevTrail) {
+                w.write(0b10, 2)
+                w.write((x ushr prevTrail).toLong(), 32 - prevLead - prevTrail)
+            } else {
+                val len = 32 - lead - trail
+                w.write(0b11, 2)
+                w.write(lead.toLong(), 5)
+                w.write((len - 1).toLong(), 5)
+                w.write((x ushr trail).toLong(), len)
+                prevLead = lead
+                prevTrail = trail
+            }
+        }
+        return w.finish()
+    }
+
+    fun decodeFloats(words: LongArray, n: Int, dst: FloatArray) {
+        if (n == 0) return
+        val r = BitReader(words)
+        var prev = r.read(32).toInt()
+        dst[0] = java.lang.Float.intBitsToFloat(prev)
+        var lead = 0
+        var trail = 0
+        for (i in 1 until n) {
+            if (r.read(1) != 0L) {
+                if (r.read(1) != 0L) {
+                    lead = r.read(5).toInt()
+                    trail = 32 - lead - (r.read(5).toInt() + 1)
+                }
+                prev = prev xor (r.read(32 - lead - trail).toInt() shl trail)
+            }
+            dst[i] = java.lang.Float.intBitsToFloat(prev)
+        }
+    }
+
+    fun encodeEpochs(src: LongArray, n: Int): LongArray {
+        val w = BitWriter()
+        if (n == 0) return w.finish()
+        w.write(src[0], 64)
+        var prevDelta = 0L
+        for (i in 1 until n) {
+            val delta = src[i] - src[i - 1]
+            val dod = delta - prevDelta
+            prevDelta = delta
+            val zz = (dod shl 1) xor (dod shr 63)          // zig-zag: small |dod| → small value
+            when {
+                zz == 0L -> w.write(0, 1)
+                zz ushr 7 == 0L -> { w.write(0b10, 2); w.write(zz, 7) }
+                zz ushr 12 == 0L -> { w.write(0b110, 3); w.write(zz, 12) }
+                zz ushr 20 == 0L -> { w.write(0b1110, 4); w.write(zz, 20) }
+                else -> { w.write(0b1111, 4); w.write(zz, 64) }
+            }
+        }
+        return w.finish()
+    }
+
+    fun decodeEpochs(words: LongArray, n: Int, dst: LongArray) {
+        if (n == 0) return
+        val r = BitReader(words)
+        dst[0] = r.read(64)
+        var delta = 0L
+        for (i in 1 until n) {
+            val zz = when {
+                r.read(1) == 0L -> 0L
+                r.read(1) == 0L -> r.read(7)
+                r.read(1) == 0L -> r.read(12)
+                r.read(1) == 0L -> r.read(20)
+                else -> r.read(64)
+            }
+            delta += (zz ushr 1) xor -(zz and 1)
+            dst[i] = dst[i - 1] + delta
+        }
+    }
+
+    private fun mask(bits: Int): Long = if (bits == 64) -1L else (1L shl bits) - 1
+
+    private class BitWriter {
+        private var words = LongArray(32)
+        private var pos = 0L
+
+        /** Append the low [bits] (1..64) of [value] */
+        fun write(value: Long, bits: Int) {
+            val w = (pos ushr 6).toInt()
+            if (w + 1 >= words.size) words = words.copyOf(words.size * 2)
+            val v = value and mask(bits)
+            val free = 64 - (pos and 63).toInt()
+            if (bits <= free) {
+                words[w] = words[w] or (v shl (free - bits))
+            } else {
+                words[w] = words[w] or (v ushr (bits - free))
+                words[w + 1] = v shl (64 - (bits - free))
+            }
+            pos += bits
+        }
+
+        fun finish(): LongArray = words.copyOf(((pos + 63) ushr 6).toInt())
+    }
+
+    private class BitReader(private val words: LongArray) {
+        private var pos = 0L
+
+        fun read(bits: Int): Long {
+            val w = (pos ushr 6).toInt()
+            val free = 64 - (pos and 63).toInt()
+            pos += bits
+            return if (bits <= free) {
+                (words[w] ushr (free - bits)) and mask(bits)
+            } else {
+                ((words[w] and mask(free)) shl (bits - free)) or
+                    (words[w + 1] ushr (64 - (bits - free)))
+            }
+        }
+    }
+}
+
+/**
+ * Append-only float column: every full block of [BLOCK] values is sealed
+ * with [Gorilla.encodeFloats], only the newest block stays a raw array. The
+ * newest value may still be rewritten with [set].
+ *
+ * A [FloatColumn] from [snapshot] is immutable without copying anything:
+ * sealing allocates a fresh raw block rather than reusing the old one, values
+ * are only appended past the snapshot's size, and the snapshot keeps its own
+ * copy of the newest value, the only one [set] can change afterwards.
+ */
+class FloatColumnBuilder {
+
+    companion object {
+        const val BLOCK = 1024
+    }
+
+    private var blocks = arrayOfNulls<LongArray>(16)
+    private var sealed = 0
+    private var tail = FloatArray(BLOCK)
+
+    var size = 0
+        private set
+
+    fun add(v: Float) {
+        if (size - sealed * BLOCK == BLOCK) seal()
+        tail[size - sealed * BLOCK] = v
+        size++
+    }
+
+    /** Rewrite value [i], which must be the newest */
+    operator fun set(i: Int, v: Float) {
+        tail[i - sealed * BLOCK] = v
+    }
+
+    operator fun get(i: Int): Float = tail[i - sealed * BLOCK]
+
+    fun snapshot(): FloatColumn =
+        FloatColumn(blocks, sealed, tail, size, if (size > 0) this[size - 1] else Float.NaN)
+
+    private fun seal() {
+        if (sealed == blocks.size) blocks = blocks.copyOf(sealed * 2)
+        blocks[sealed++] = Gorilla.encodeFloats(tail, BLOCK)
+        tail = FloatArray(BLOCK)
+    }
+}
+
+/** Read-only view of the first [size] values of a [FloatColumnBuilder] */
+class FloatColumn internal constructor(
+    private val blocks: Array<LongArray?>,
+    private val sealed: Int,
+    private val tail: FloatArray,
+    val size: Int,
+    /** Value [size] - 1 as of the snapshot; the builder may rewrite it in [tail] */
+    private val newest: Float
+) {
+    companion object {
+        val EMPTY = FloatColumn(arrayOfNulls(0), 0, FloatArray(0), 0, Float.NaN)
+    }
+
+    /** Value [i]; decodes a whole block when [i] is sealed, so walks use a [reader] */
+    operator fun get(i: Int): Float = reader()[i]
+
+    /** Sequential access that decodes each sealed block once; not thread-safe */
+    fun reader() = Reader()
+
+    inner class Reader {
+        private var buf: FloatArray? = null
+        private var block = -1
+
+        operator fun get(i: Int): Float {
+            if (i == size - 1) return newest
+            val b = i / FloatColumnBuilder.BLOCK
+            if (b >= sealed) return tail[i - sealed * FloatColumnBuilder.BLOCK]
+            val out = buf ?: FloatArray(FloatColumnBuilder.BLOCK).also { buf = it }
+            if (b != block) {
+                Gorilla.decodeFloats(blocks[b]!!, FloatColumnBuilder.BLOCK, out)
+                block = b
+            }
+            return out[i - b * FloatColumnBuilder.BLOCK]
+        }
+    }
+}
+
+/**
+ * Append-only, non-decreasing epoch column: like [FloatColumnBuilder], with
+ * sealed blocks in [Gorilla.encodeEpochs] and the first epoch of every block
+ * kept raw so a search only decodes one block.
+ */
+class EpochColumnBuilder {
+
+    private val block = FloatColumnBuilder.BLOCK
+    private var blocks = arrayOfNulls<LongArray>(16)
+    private var firsts = LongArray(16)
+    private var sealed = 0
+    private var tail = LongArray(block)
+
+    var size = 0
+        private set
+
+    fun add(epoch: Long) {
+        if (size - sealed * block == block) seal()
+        tail[size - sealed * block] = epoch
+        size++
+    }
+
+    fun snapshot(): EpochColumn = EpochColumn(blocks, firsts, sealed, tail, size)
+
+    private fun seal() {
+        if (sealed == blocks.size) {
+            blocks = blocks.copyOf(sealed * 2)
+            firsts = firsts.copyOf(sealed * 2)
+        }
+        firsts[sealed] = tail[0]
+        blocks[sealed++] = Gorilla.encodeEpochs(tail, block)
+        tail = LongArray(block)
+    }
+}
+
+/** Read-only view of the first [size] epochs of an [EpochColumnBuilder] */
+class EpochColumn internal constructor(
+    private val blocks: Array<LongArray?>,
+    private val firsts: LongArray,
+    private val sealed: Int,
+    private val tail: LongArray,
+    val size: Int
+) {
+    companion object {
+        val EMPTY = EpochColumn(arrayOfNulls(0), LongArray(0), 0, LongArray(0), 0)
+    }
+
+    private val block = FloatColumnBuilder.BLOCK
+
+    /** Epoch [i]; decodes a whole block when [i] is sealed, so walks use a [reader] */
+    operator fun get(i: Int): Long = reader()[i]
+
+    fun reader() = Reader()
+
+    /** First index whose epoch is at or after [epoch], [size] if none; one block decode at most */
+    fun indexAtOrAfter(epoch: Long): Int {
+        /* first block (the raw tail counting as block [sealed]) starting at or after epoch */
+        val blockCount = sealed + if (size > sealed * block) 1 else 0
+        fun first(b: Int) = if (b < sealed) firsts[b] else tail[0]
+        var lo = 0
+        var hi = blockCount
+        while (lo < hi) {
+            val mid = (lo + hi) ushr 1
+            if (first(mid) < epoch) lo = mid + 1 else hi = mid
+        }
+        if (lo == 0) return 0
+
+        /* the answer lies in the block before, or is the start of block lo */
+        val r = reader()
+        var from = (lo - 1) * block
+        var to = minOf(lo * block, size)
+        while (from < to) {
+            val mid = (from + to) ushr 1
+            if (r[mid] < epoch) from = mid + 1 else to = mid
+        }
+        return from
+    }
+
+    inner class Reader {
+        private var buf: LongArray? = null
+        private var decoded = -1
+
+        operator fun get(i: Int): Long {
+            val b = i / block
+            if (b >= sealed) return tail[i - sealed * block]
+            val out = buf ?: LongArray(block).also { buf = it }
+            if (b != decoded) {
+                Gorilla.decodeEpochs(blocks[b]!!, block, out)
+                decoded = b
+            }
+            return out[i - b * block]
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.soilmonitor
+
+import java.io.DataInput
+import java.io.DataOutput
+import java.io.File
+import kotlin.math.exp
+import kotlin.math.max
+import kotlin.math.sqrt
+
+/**
+ * When a plant is expected to reach its dry threshold: the fitted drying line
+ * runs from ([originEpoch], [originValue]) through [dryEpoch], and the slope's
+ * ±1 standard error gives the band [earliest]..[latest] (latest is null when
+ * a flat drying rate is within that error).
+ */
+data class DryForecast(
+    val originEpoch: Long,
+    val originValue: Float,
+    val dryEpoch: Long,
+    val earliest: Long,
+    val latest: Long?
+)
+
+/**
+ * Online drying-rate estimate for one plant: an exponentially weighted least
+ * squares fit of the raw reading against time, restarted at every watering.
+ * Waterings follow the same [WateringDetector] rule as [WateringIndex], so a
+ * single noisy dip to `wet` does not reset the fit; while a crossing is
+ * unconfirmed a second fit from its first reading runs alongside, and takes
+ * over once the crossing is confirmed.
+ *
+ * Each reading updates six running sums per fit in O(1); older readings fade
+ * with a time constant of [TAU_HOURS], so the fit follows the current drying
+ * rate rather than the average since watering.
+ */
+class DryForecaster(channel: Int, wet: Float) :
+    ReadingTracker(channel), PersistentTracker {
+
+    companion object {
+        const val TAU_HOURS = 12.0
+        const val MIN_READINGS = 3
+    }
+
+    /** Weighted sums over t (hours since [origin], the watering) and y */
+    private class Fit(val origin: Long) {
+        var lastEpoch = origin
+        var readings = 0
+        var s0 = 0.0
+        var st = 0.0
+        var sy = 0.0
+        var stt = 0.0
+        var sty = 0.0
+        var syy = 0.0
+
+        fun add(epoch: Long, v: Float) {
+            val fade = exp(-(epoch - lastEpoch) / 3600.0 / TAU_HOURS)
+            s0 *= fade; st *= fade; sy *= fade; stt *= fade; sty *= fade; syy *= fade
+            val t = (epoch - origin) / 3600.0
+            val y = v.toDouble()
+            s0 += 1.0
+            st += t
+            sy += y
+            stt += t * t
+            sty += t * y
+            syy += y * y
+            readings++
+            lastEpoch = epoch
+        }
+
+        fun forecast(dry: Float): DryForecast? {
+            if (readings < MIN_READINGS) return null
+            val sxx = stt - st * st / s0
+            if (sxx <= 1e-9) return null
+
+            val slope = (sty - st * sy / s0) / sxx           // raw units per hour
+            val icept = (sy - slope * st) / s0
+            val tNow = (lastEpoch - origin) / 3600.0
+            val yNow = icept + slope * tNow
+            if (slope <= 0 || yNow >= dry) return null
+
+            val sse = max(0.0, syy - icept * sy - slope * sty)
+            val se = sqrt(sse / max(s0 - 2.0, 1.0) / sxx)
+            fun at(rate: Double) = lastEpoch + ((dry - yNow) / rate * 3600).toLong()
+
+            return DryForecast(
+                originEpoch = origin,
+                originValue = icept.toFloat(),
+                dryEpoch = at(slope),
+                earliest = at(slope + se),
+                latest = if (slope - se > 0) at(slope - se) else null
+            )
+        }
+
+        fun save(out: DataOutput) {
+            out.writeLong(origin)
+            out.writeLong(lastEpoch)
+            out.writeInt(readings)
+            for (sum in doubleArrayOf(s0, st, sy, stt, sty, syy)) out.writeDouble(sum)
+        }
+
+        companion object {
+            fun restore(inp: DataInput) = Fit(inp.readLong()).apply {
+                lastEpoch = inp.readLong()
+                readings = inp.readInt()
+                s0 = inp.readDouble()
+                st = inp.readDouble()
+                sy = inp.readDouble()
+                stt = inp.readDouble()
+                sty = inp.readDouble()
+                syy = inp.readDouble()
+            }
+        }
+    }
+
+    private val detector = WateringDetector(wet)
+    private var fit: Fit? = null                 // since the last confirmed watering
+    private var pending: Fit? = null             // since an unconfirmed crossing
+
+    override fun accept(epoch: Long, v: Float) {
+        detector.accept(epoch, v)
+        if (detector.run == 0) pending = null
+        else if (detector.run == 1) pending = Fit(epoch)
+        val f = fit ?: Fit(epoch).also { fit = it }
+        f.add(epoch, v)
+        pending?.add(epoch, v)
+        if (detector.confirmed) {
+            fit = pending
+            pending = null
+        }
+    }
+
+    override fun save(out: DataOutput) {
+        saveProgress(out)
+        detector.save(out)
+        for (f in arrayOf(fit, pending)) {
+            out.writeBoolean(f != null)
+            f?.save(out)
+        }
+    }
+
+    override fun restore(inp: DataInput) {
+        restoreProgress(inp)
+        detector.restore(inp)
+        fit = if (inp.readBoolean()) Fit.restore(inp) else null
+        pending = if (inp.readBoolean()) Fit.restore(inp) else null
+    }
+
+    /**
+     * Forecast the crossing of [dry], or null while there are too few
+     * readings since watering or the plant is not drying towards it.
+     */
+    fun forecast(dry: Float): DryForecast? = fit?.forecast(dry)
+}
+
+/**
+ * Process-wide [DryForecaster]s, one per plant and wet threshold, kept in
+ * step with the shared log and saved between runs (see [SavedTrackerIndex]),
+ * so a check after a cold start only feeds them the rows logged since.
+ */
+object ForecastIndex {
+
+    private const val MAGIC = 0x46435354            // "FCST"
+    private const val VERSION = 2                   // 2: restarts on confirmed waterings only
+
+    private val index = SavedTrackerIndex(MAGIC, VERSION) { key ->
+        DryForecaster(SensorChannels.moisture(key.first), key.second)
+    }
+
+    /** [DryForecaster.forecast] of [plant] after catching up with [series] */
+    fun forecast(series: SensorSeries, plant: Int, wet: Float, dry: Float): DryForecast? =
+        index.query(series, plant, wet) { it.forecast(dry) }
+
+    /**
+     * [DryForecaster.forecast] of [plant] from a [window] of the log that is
+     * not the shared history (e.g. a one-off fetch of the last hours), on a
+     * throwaway forecaster so the indexed one is not rebuilt from it.
+     */
+    fun forecastWindow(window: SensorSeries, plant: Int, wet: Float, dry: Float): DryForecast? {
+        val t = DryForecaster(SensorChannels.moisture(plant), wet)
+        t.feed(window)
+        return t.forecast(dry)
+    }
+
+    /* ================================================================ */
+    /*  ingest + persistence (driven by SensorLogRepository)            */
+    /* ================================================================ */
+
+    internal fun attach(f: File) = index.attach(f)
+
+    internal fun load() = index.load()
+
+    internal fun ingest(series: SensorSeries) = index.ingest(series)
+}
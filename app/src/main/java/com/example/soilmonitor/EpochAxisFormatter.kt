@@ -0,0 +1,21 @@
+package com.example.soilmonitor
+
+import com.github.mikephil.charting.formatter.ValueFormatter
+import kotlin.math.roundToInt
+
+/**
+ * X-axis formatter for charts whose x values are positions of a
+ * [ChartTimeline]. Labels are formatted only for the ticks the axis actually
+ * draws, and positions appended to the timeline later are picked up as they
+ * come, so the formatter never has to be rebuilt.
+ */
+class EpochAxisFormatter(
+    private val timeline: ChartTimeline,
+    private val clock: LocalClock = LocalClock()
+) : ValueFormatter() {
+
+    override fun getFormattedValue(value: Float): String {
+        val i = value.roundToInt()
+        return if (i in 0 until timeline.count) clock.formatTime(timeline.epochAt(i)) else ""
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.soilmonitor
+
+import android.content.Context
+import okhttp3.Cache
+import okhttp3.Call
+import okhttp3.ConnectionPool
+import okhttp3.EventListener
+import okhttp3.Handshake
+import okhttp3.OkHttpClient
+import okhttp3.Protocol
+import okhttp3.Response
+import java.io.File
+import java.io.IOException
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.Proxy
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Totals over every call made through [HttpStack] since the process started.
+ * Times are wall-clock milliseconds summed over calls: [setupMs] is what
+ * opening connections cost (DNS, TCP connect and TLS handshake, of which
+ * [tlsMs] was the handshake), [transferMs] the time from sending a request
+ * to reading the last byte of its response.
+ */
+data class HttpMetrics(
+    val calls: Long,
+    val failures: Long,
+    /** New connections opened; every other call reused a pooled one or hit the cache */
+    val connections: Long,
+    val cacheHits: Long,
+    val conditionalHits: Long,
+    val setupMs: Long,
+    val tlsMs: Long,
+    val transferMs: Long
+) {
+    /** One-line summary, e.g. for a debug screen or the log */
+    fun describe(): String =
+        "$calls calls ($failures failed), $connections connections, " +
+            "$cacheHits cached + $conditionalHits revalidated; " +
+            "setup $setupMs ms (TLS $tlsMs ms), transfer $transferMs ms"
+}
+
+/**
+ * The one HTTP client of the app. Every caller shares its connection pool
+ * and dispatcher, so polls to the ORDS host reuse a warm TLS connection
+ * instead of paying a fresh handshake each time.
+ *
+ * - responses go through an HTTP disk cache in the app's cache dir (once
+ *   [attach]ed), so anything the server marks cacheable or answers with
+ *   validators is revalidated rather than downloaded again;
+ * - OkHttp asks for gzip and unpacks it transparently, so JSON pages travel
+ *   compressed;
+ * - the defaults below bound every call; callers needing other timeouts
+ *   derive a client with [OkHttpClient.newBuilder], which keeps the shared
+ *   pool and cache.
+ *
+ * [metrics] separates connection setup from transfer time, to tell a slow
+ * network from a slow server; the Settings screen shows them in debug mode.
+ */
+object HttpStack {
+
+    private const val CACHE_DIR = "http"
+    private const val CACHE_BYTES = 10L * 1024 * 1024
+
+    @Volatile
+    private var cacheDir: File? = null
+
+    private val calls = AtomicLong()
+    private val failures = AtomicLong()
+    private val connections = AtomicLong()
+    private val cacheHits = AtomicLong()
+    private val conditionalHits = AtomicLong()
+    private val setupMs = AtomicLong()
+    private val tlsMs = AtomicLong()
+    private val transferMs = AtomicLong()
+
+    /**
+     * Use the app's cache dir for the HTTP cache. Call before the first
+     * request, e.g. from [SensorLogRepository.attach] or a worker; a client
+     * built without it simply has no disk cache.
+     */
+    fun attach(context: Context) {
+        if (cacheDir == null) cacheDir = File(context.applicationContext.cacheDir, CACHE_DIR)
+    }
+
+    val client: OkHttpClient by lazy {
+        OkHttpClient.Builder()
+            .connectionPool(ConnectionPool(4, 5, TimeUnit.MINUTES))
+            .connectTimeout(10, TimeUnit.SECONDS)
+            .readTimeout(20, TimeUnit.SECONDS)
+            .writeTimeout(10, TimeUnit.SECONDS)
+            .callTimeout(60, TimeUnit.SECONDS)
+            .retryOnConnectionFailure(true)
+            .eventListenerFactory(object : EventListener.Factory {
+                override fun create(call: Call): EventListener = Timing()
+            })
+            .apply { cacheDir?.let { cache(Cache(it, CACHE_BYTES)) } }
+            .build()
+    }
+
+    fun metrics() = HttpMetrics(
+        calls = calls.get(),
+        failures = failures.get(),
+        connections = connections.get(),
+        cacheHits = cacheHits.get(),
+        conditionalHits = conditionalHits.get(),
+        setupMs = setupMs.get(),
+        tlsMs = tlsMs.get(),
+        transferMs = transferMs.get()
+    )
+
+    /** Per-call listener: OkHttp creates one for every call, so no locking is needed */
+    private class Timing : EventListener() {
+        private var connectStart = 0L
+        private var dnsStart = 0L
+        private var tlsStart = 0L
+        private var requestStart = 0L
+
+        override fun callStart(call: Call) {
+            calls.incrementAndGet()
+        }
+
+        override fun dnsStart(call: Call, domainName: String) {
+            dnsStart = now()
+        }
+
+        override fun dnsEnd(call: Call, domainName: String, inetAddressList: List<InetAddress>) {
+            setupMs.addAndGet(now() - dnsStart)
+        }
+
+        override fun connectStart(call: Call, inetSocketAddress: InetSocketAddress, proxy: Proxy) {
+            connectStart = now()
+        }
+
+        override fun secureConnectStart(call: Call) {
+            tlsStart = now()
+        }
+
+        override fun secureConnectEnd(call: Call, handshake: Handshake?) {
+            tlsMs.addAndGet(now() - tlsStart)
+        }
+
+        override fun connectEnd(
+            call: Call, inetSocketAddress: InetSocketAddress, proxy: Proxy, protocol: Protocol?
+        ) {
+            connections.incrementAndGet()
+            setupMs.addAndGet(now() - connectStart)
+        }
+
+        override fun connectFailed(
+            call: Call, inetSocketAddress: InetSocketAddress, proxy: Proxy,
+            protocol: Protocol?, ioe: IOException
+        ) {
+            setupMs.addAndGet(now() - connectStart)
+        }
+
+        override fun requestHeadersStart(call: Call) {
+            if (requestStart == 0L) requestStart = now()
+        }
+
+        override fun responseBodyEnd(call: Call, byteCount: Long) {
+            if (requestStart != 0L) transferMs.addAndGet(now() - requestStart)
+            requestStart = 0L
+        }
+
+        override fun cacheHit(call: Call, response: Response) {
+            cacheHits.incrementAndGet()
+        }
+
+        override fun cacheConditionalHit(call: Call, cachedResponse: Response) {
+            conditionalHits.incrementAndGet()
+        }
+
+        override fun callFailed(call: Call, ioe: IOException) {
+            failures.incrementAndGet()
+        }
+
+        private fun now() = System.nanoTime() / 1_000_000
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.soilmonitor
+
+/**
+ * Hand-written parser for the fixed ISO-8601 format ORDS uses for
+ * `created_at`, e.g. `2025-06-01T08:10:00Z`, `2025-06-01T08:10:00.123Z` or
+ * `2025-06-01T10:10:00+02:00`.
+ *
+ * Avoids `OffsetDateTime.parse`/`DateTimeFormatter` entirely and does no
+ * allocation. Consecutive log rows almost always share a date, so the epoch
+ * day of the last seen `yyyy-MM-dd` is cached; instances are therefore not
+ * thread-safe.
+ */
+class IsoTimestamps {
+
+    private var cachedDateKey = -1
+    private var cachedEpochDay = 0L
+
+    /**
+     * @return epoch seconds (UTC) of [s]
+     * @throws IllegalArgumentException if [s] is not in the expected format
+     */
+    fun parseEpochSecond(s: CharSequence): Long {
+        require(s.length >= 19 && s[4] == '-' && s[7] == '-' &&
+                (s[10] == 'T' || s[10] == ' ') && s[13] == ':' && s[16] == ':') {
+            "bad timestamp: $s"
+        }
+        val year = digits(s, 0, 4)
+        val month = digits(s, 5, 2)
+        val day = digits(s, 8, 2)
+        val hour = digits(s, 11, 2)
+        val minute = digits(s, 14, 2)
+        val second = digits(s, 17, 2)
+
+        /* optional fraction – ignored, we keep whole seconds */
+        var i = 19
+        if (i < s.length && s[i] == '.') {
+            i++
+            while (i < s.length && s[i] in '0'..'9') i++
+        }
+
+        /* zone designator: Z, ±HH:mm, ±HHmm or none (= UTC) */
+        var offset = 0
+        if (i < s.length && s[i] != 'Z') {
+            val sign = when (s[i]) {
+                '+' -> 1
+                '-' -> -1
+                else -> throw IllegalArgumentException("bad timestamp: $s")
+            }
+            val oh = digits(s, i + 1, 2)
+            val om = if (i + 3 < s.length && s[i + 3] == ':') digits(s, i + 4, 2)
+                     else if (i + 3 < s.length) digits(s, i + 3, 2)
+                     else 0
+            offset = sign * (oh * 3600 + om * 60)
+        }
+
+        val dateKey = (year * 100 + month) * 100 + day
+        if (dateKey != cachedDateKey) {
+            cachedEpochDay = epochDay(year, month, day)
+            cachedDateKey = dateKey
+        }
+        return cachedEpochDay * 86_400L + hour * 3600 + minute * 60 + second - offset
+    }
+
+    private fun digits(s: CharSequence, from: Int, count: Int): Int {
+        require(from + count <= s.length) { "bad timestamp: $s" }
+        var v = 0
+        for (k in from until from + count) {
+            val d = s[k] - '0'
+            require(d in 0..9) { "bad timestamp: $s" }
+            v = v * 10 + d
+        }
+        return v
+    }
+
+    /** Days since 1970-01-01 for a proleptic Gregorian date (H. Hinnant's algorithm) */
+    private fun epochDay(year: Int, month: Int, day: Int): Long {
+        val y = (if (month <= 2) year - 1 else year).toLong()
+        val era = Math.floorDiv(y, 400L)
+        val yoe = y - era * 400
+        val mp = (month + 9) % 12
+        val doy = (153 * mp + 2) / 5 + day - 1
+        val doe = yoe * 365 + yoe / 4 - yoe / 100 + doy
+        return era * 146_097 + doe - 719_468
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.soilmonitor
+
+import okhttp3.Call
+import okhttp3.HttpUrl
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import java.io.IOException
+import java.time.Instant
+import java.util.concurrent.TimeUnit
+
+/**
+ * The server answered 404 or 405 for the long-poll endpoint: it does not
+ * offer one, and asking again will not change that.
+ */
+class LongPollUnsupportedException(code: Int) : IOException("HTTP $code: no long-poll endpoint")
+
+/**
+ * Cancels the waits of one run of a [LongPollClient] caller: [cancel] aborts
+ * the wait in progress and fails every later one, including a wait that has
+ * not reached the network yet. Each run owns its own token, so cancelling
+ * one never touches a wait started by the next.
+ */
+class WaitToken {
+
+    @Volatile
+    var cancelled = false
+        private set
+
+    /** The wait in progress, if any; set by [LongPollClient.waitForRows] */
+    @Volatile
+    internal var call: Call? = null
+
+    fun cancel() {
+        cancelled = true
+        call?.cancel()
+    }
+}
+
+/**
+ * Long-poll client for a "wait for rows after T" endpoint next to the ORDS
+ * log:
+ *
+ *     GET <endpoint>?since=<ISO instant>&timeout=<seconds>
+ *
+ * The server holds the request until rows with `created_at` after `since`
+ * are logged and answers them as one ORDS-shaped page (`{"items":[…]}`), or
+ * answers 204 once `timeout` seconds pass without any. A new reading thus
+ * arrives the moment it is logged, and the radio stays idle in between.
+ */
+class LongPollClient(
+    http: OkHttpClient,
+    private val endpoint: HttpUrl,
+    private val timeoutS: Int = 55
+) {
+    /** The shared client, with room for the server to hold the request */
+    private val http = http.newBuilder()
+        .readTimeout(timeoutS + 15L, TimeUnit.SECONDS)
+        .callTimeout(timeoutS + 30L, TimeUnit.SECONDS)
+        .build()
+
+    /**
+     * Block until rows newer than [since] are logged or the wait times out.
+     *
+     * @param token cancels the wait from another thread
+     * @return number of rows appended to [into]; 0 after a timeout
+     * @throws LongPollUnsupportedException if the server has no such endpoint
+     * @throws IOException on network failure, [cancellation][WaitToken.cancel]
+     *         or an unexpected response
+     */
+    fun waitForRows(since: Long, into: SensorStore, token: WaitToken = WaitToken()): Int {
+        val url = endpoint.newBuilder()
+            .addQueryParameter("since", Instant.ofEpochSecond(since).toString())
+            .addQueryParameter("timeout", timeoutS.toString())
+            .build()
+        val call = http.newCall(Request.Builder().url(url).build())
+        token.call = call
+        try {
+            // publish the call before checking, so a concurrent cancel either
+            // sees it or is seen here
+            if (token.cancelled) throw IOException("Canceled")
+            call.execute().use { response ->
+                if (response.code == 204) return 0
+                if (response.code == 404 || response.code == 405) {
+                    throw LongPollUnsupportedException(response.code)
+                }
+                if (!response.isSuccessful) throw IOException("HTTP ${response.code}")
+                val body = response.body ?: throw IOException("empty body")
+                return try {
+                    SensorLogDecoder.decode(body.source(), into).rows
+                } catch (e: IllegalStateException) {
+                    throw IOException("malformed log response", e)
+                } catch (e: IllegalArgumentException) {
+                    throw IOException("malformed log response", e)
+                }
+            }
+        } finally {
+            token.call = null
+        }
+    }
+}
+
+/**
+ * Server-push mode of the sync layer: while a screen is visible (see
+ * [PollScheduler]) a background thread keeps one long-poll open through
+ * [SensorLogRepository.awaitRows], so readings are published as soon as they
+ * are logged.
+ *
+ * While the stream is [connected] the scheduler skips its timed polls. When
+ * a wait fails (e.g. network loss) the feed drops back to adaptive polling
+ * and retries the stream after a back-off growing from [RETRY_MIN_MS] to
+ * [RETRY_MAX_MS]. A server without the endpoint (404 or 405) marks the feed
+ * [unsupported] for the rest of the process; polling alone takes over then.
+ */
+object LiveFeed {
+
+    private const val RETRY_MIN_MS = 30_000L
+    private const val RETRY_MAX_MS = 30 * 60_000L
+
+    /** True while the last long-poll completed normally */
+    @Volatile
+    var connected = false
+        private set
+
+    /** True once the server turned out not to offer long-polling */
+    @Volatile
+    var unsupported = false
+        private set
+
+    /** One start()..stop() of the stream: its thread and the token of its waits */
+    private class Run : Thread("live-feed") {
+        val token = WaitToken()
+
+        init {
+            isDaemon = true
+        }
+
+        override fun run() = loop(this)
+    }
+
+    @Volatile
+    private var current: Run? = null
+
+    /** Open the stream unless it is already running or [unsupported]; main thread */
+    fun start() {
+        if (current != null || unsupported) return
+        val run = Run()
+        current = run
+        run.start()
+    }
+
+    /** Close the stream, aborting the wait in progress; main thread */
+    fun stop() {
+        val run = current ?: return
+        current = null
+        connected = false
+        run.token.cancel()
+        run.interrupt()
+    }
+
+    private fun loop(run: Run) {
+        var retryMs = RETRY_MIN_MS
+        while (current === run) {
+            try {
+                // only a completed long-poll counts, not the sync that fills an empty history
+                connected = SensorLogRepository.awaitRows(run.token) && current === run
+                retryMs = RETRY_MIN_MS
+            } catch (e: LongPollUnsupportedException) {
+                unsupported = true
+                connected = false
+                break
+            } catch (e: IOException) {
+                connected = false
+                if (current !== run) break
+                try {
+                    Thread.sleep(retryMs)
+                } catch (e: InterruptedException) {
+                    break
+                }
+                retryMs = (retryMs * 2).coerceAtMost(RETRY_MAX_MS)
+            }
+        }
+    }
+}
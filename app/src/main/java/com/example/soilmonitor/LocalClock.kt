@@ -0,0 +1,68 @@
+package com.example.soilmonitor
+
+import java.text.DateFormatSymbols
+import java.time.Instant
+import java.time.LocalDate
+import java.time.ZoneId
+
+/**
+ * Converts stored epoch seconds to wall-clock fields in [zone] for display.
+ *
+ * The zone offset is looked up once and reused until the next DST
+ * transition, so hour/day/label calls on consecutive rows are plain
+ * arithmetic. Instances are not thread-safe; give each redraw its own.
+ */
+class LocalClock(val zone: ZoneId = ZoneId.systemDefault()) {
+
+    companion object {
+        /** "Hide night" hides 00:00 until this hour */
+        const val NIGHT_END_HOUR = 6
+
+        private val MONTHS: Array<String> = DateFormatSymbols.getInstance().shortMonths
+    }
+
+    private var validFrom = Long.MAX_VALUE
+    private var validTo = Long.MIN_VALUE
+    private var offset = 0
+
+    /** Local seconds since 1970-01-01T00:00 for [epoch] */
+    fun localSeconds(epoch: Long): Long {
+        if (epoch < validFrom || epoch >= validTo) lookup(epoch)
+        return epoch + offset
+    }
+
+    /** Local epoch day (days since 1970-01-01) */
+    fun day(epoch: Long): Long = Math.floorDiv(localSeconds(epoch), 86_400L)
+
+    /** Local hour of day, 0..23 */
+    fun hour(epoch: Long): Int = (Math.floorMod(localSeconds(epoch), 86_400L) / 3600).toInt()
+
+    /** True between midnight and [NIGHT_END_HOUR] */
+    fun isNight(epoch: Long): Boolean = hour(epoch) < NIGHT_END_HOUR
+
+    /** "HH:mm" */
+    fun formatTime(epoch: Long): String {
+        val sod = Math.floorMod(localSeconds(epoch), 86_400L).toInt()
+        val h = sod / 3600
+        val m = sod / 60 % 60
+        return charArrayOf('0' + h / 10, '0' + h % 10, ':', '0' + m / 10, '0' + m % 10)
+            .concatToString()
+    }
+
+    /** "dd MMM" */
+    fun formatDate(epoch: Long): String {
+        val date = LocalDate.ofEpochDay(day(epoch))
+        val d = date.dayOfMonth
+        return "${'0' + d / 10}${'0' + d % 10} ${MONTHS[date.monthValue - 1]}"
+    }
+
+    private fun lookup(epoch: Long) {
+        val rules = zone.rules
+        val instant = Instant.ofEpochSecond(epoch)
+        offset = rules.getOffset(instant).totalSeconds
+        // previousTransition() is strictly before its argument; include one at epoch itself
+        validFrom = rules.previousTransition(instant.plusSeconds(1))?.toEpochSecond()
+            ?: Long.MIN_VALUE
+        validTo = rules.nextTransition(instant)?.toEpochSecond() ?: Long.MAX_VALUE
+    }
+}
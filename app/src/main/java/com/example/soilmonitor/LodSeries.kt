@@ -0,0 +1,130 @@
+package com.example.soilmonitor
+
+import com.github.mikephil.charting.data.Entry
+
+/**
+ * Level-of-detail wrapper around one chart series (entries sorted by x).
+ *
+ * [view] returns at most about two points per horizontal pixel for the
+ * visible x window (min and max of each pixel bucket, so spikes survive),
+ * plus a coarse min/max overview of everything outside the window. The first
+ * and last points are always kept so the chart's x range, and with it the
+ * current zoom, does not move when the entries are swapped.
+ *
+ * New points are added with [append]; the coarse overview is recomputed
+ * lazily on the next [view].
+ */
+class LodSeries(entries: List<Entry>) {
+
+    private var xs = FloatArray(entries.size) { entries[it].x }
+    private var ys = FloatArray(entries.size) { entries[it].y }
+
+    private var overview = IntArray(0)
+    private var overviewBuckets = -1
+
+    var size: Int = entries.size
+        private set
+
+    /**
+     * Drop the last [dropLast] points, then add [entries], whose x values must
+     * not be below the last remaining point.
+     */
+    fun append(entries: List<Entry>, dropLast: Int = 0) {
+        size = (size - dropLast).coerceAtLeast(0)
+        val need = size + entries.size
+        if (need > xs.size) {
+            val cap = maxOf(need, xs.size + xs.size / 2)
+            xs = xs.copyOf(cap)
+            ys = ys.copyOf(cap)
+        }
+        for (e in entries) {
+            xs[size] = e.x
+            ys[size] = e.y
+            size++
+        }
+        overviewBuckets = -1
+    }
+
+    /** Entries to draw for the x window [fromX, toX] on a [pixels]-wide chart */
+    fun view(fromX: Float, toX: Float, pixels: Int): List<Entry> {
+        val n = size
+        if (pixels <= 0 || n <= 2 * pixels) return List(n) { Entry(xs[it], ys[it]) }
+
+        if (overviewBuckets != pixels) {
+            overview = IndexList().apply {
+                add(0)
+                minMax(0, n, xs[0], xs[n - 1], pixels, this)
+                add(n - 1)
+            }.toArray()
+            overviewBuckets = pixels
+        }
+
+        // one point beyond each edge so the line runs to the border
+        val lo = (lowerBound(fromX) - 1).coerceAtLeast(0)
+        val hi = (lowerBound(Math.nextUp(toX)) + 1).coerceAtMost(n)
+
+        val out = ArrayList<Entry>(overview.size + 2 * pixels + 2)
+        for (i in overview) if (i < lo) out += Entry(xs[i], ys[i])
+        val fine = IndexList()
+        minMax(lo, hi, fromX, toX, pixels, fine)
+        for (k in 0 until fine.size) out += Entry(xs[fine[k]], ys[fine[k]])
+        for (i in overview) if (i >= hi) out += Entry(xs[i], ys[i])
+        return out
+    }
+
+    /** Append, in index order, the min and max of every bucket of rows [from, to) */
+    private fun minMax(from: Int, to: Int, x0: Float, x1: Float, buckets: Int, out: IndexList) {
+        if (from >= to) return
+        val width = ((x1 - x0) / buckets).takeIf { it > 0f } ?: 1f
+        var bucket = Int.MIN_VALUE
+        var minIdx = -1
+        var maxIdx = -1
+        for (i in from until to) {
+            val b = ((xs[i] - x0) / width).toInt().coerceIn(0, buckets - 1)
+            if (b != bucket) {
+                flush(minIdx, maxIdx, out)
+                bucket = b
+                minIdx = i
+                maxIdx = i
+            } else {
+                if (ys[i] < ys[minIdx]) minIdx = i
+                if (ys[i] > ys[maxIdx]) maxIdx = i
+            }
+        }
+        flush(minIdx, maxIdx, out)
+    }
+
+    private fun flush(minIdx: Int, maxIdx: Int, out: IndexList) {
+        if (minIdx < 0) return
+        out.add(minOf(minIdx, maxIdx))
+        if (minIdx != maxIdx) out.add(maxOf(minIdx, maxIdx))
+    }
+
+    /** First index whose x is >= [x] */
+    private fun lowerBound(x: Float): Int {
+        var lo = 0
+        var hi = size
+        while (lo < hi) {
+            val mid = (lo + hi) ushr 1
+            if (xs[mid] < x) lo = mid + 1 else hi = mid
+        }
+        return lo
+    }
+
+    /** Growable, sorted, de-duplicated list of row indices */
+    private class IndexList {
+        private var data = IntArray(64)
+        var size = 0
+            private set
+
+        fun add(i: Int) {
+            if (size > 0 && data[size - 1] >= i) return
+            if (size == data.size) data = data.copyOf(size * 2)
+            data[size++] = i
+        }
+
+        operator fun get(k: Int) = data[k]
+
+        fun toArray(): IntArray = data.copyOf(size)
+    }
+}
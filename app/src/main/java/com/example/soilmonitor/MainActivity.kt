@@ -12,6 +12,7 @@ import androidx.core.content.ContextCompat
 import androidx.fragment.app.Fragment
 import com.google.android.material.bottomnavigation.BottomNavigationView
 import androidx.work.ExistingPeriodicWorkPolicy
+import androidx.work.ExistingWorkPolicy
 import androidx.work.PeriodicWorkRequestBuilder
 import androidx.work.WorkManager
 import java.util.concurrent.TimeUnit
@@ -30,11 +31,14 @@ class MainActivity : AppCompatActivity() {
         super.onCreate(savedInstanceState)
         setContentView(R.layout.activity_main)
 
+        /* ---------- sensor log: show cached history while syncing ---------- */
+        SensorLogRepository.attach(applicationContext)
+
         /* ---------- notifications ---------- */
         createNotificationChannel()
         requestNotificationPermissionIfNeed()
 
-        /* ---------- schedule background worker (runs every 15 min) ---------- */
+        /* ---------- schedule background checks (planned + 6 h safety net) ---------- */
         scheduleBackgroundCheck()
 
         /* ---------- bottom‐nav setup ---------- */
@@ -105,19 +109,24 @@ class MainActivity : AppCompatActivity() {
     }
 
     /* --------------------------------------------------------------------- */
-    /*  PERIODIC BACKGROUND WORK (WorkManager)                               */
+    /*  BACKGROUND WORK (WorkManager)                                        */
     /* --------------------------------------------------------------------- */
 
     private fun scheduleBackgroundCheck() {
+        // Each check plans the next one just before a plant is predicted to
+        // cross 20 %; the periodic run only catches plants without a forecast.
         val work = PeriodicWorkRequestBuilder<MoistureCheckWorker>(
-            15, TimeUnit.MINUTES          // Android batches intelligently
+            6, TimeUnit.HOURS
         ).build()
 
         WorkManager.getInstance(this).enqueueUniquePeriodicWork(
             "SoilMoistureWorker",         // unique name
-            ExistingPeriodicWorkPolicy.KEEP,
+            ExistingPeriodicWorkPolicy.UPDATE,  // moves installs off the old 15-min period
             work
         )
+
+        // start planning now unless a check is planned already
+        MoistureCheckWorker.planNext(this, 0L, planned = false, policy = ExistingWorkPolicy.KEEP)
     }
 
     /* --------------------------------------------------------------------- */
@@ -11,18 +11,60 @@ import android.preference.PreferenceManager
 import androidx.core.app.ActivityCompat
 import androidx.core.app.NotificationCompat
 import androidx.core.app.NotificationManagerCompat
+import androidx.work.ExistingWorkPolicy
+import androidx.work.OneTimeWorkRequestBuilder
+import androidx.work.WorkManager
 import androidx.work.Worker
 import androidx.work.WorkerParameters
-import okhttp3.OkHttpClient
-import okhttp3.Request
-import org.json.JSONObject
-import java.io.IOException
-
+import androidx.work.workDataOf
+import java.util.concurrent.TimeUnit
+
+/**
+ * Checks the newest reading against the 20 % threshold and alerts, then
+ * plans its own next run: one-time work shortly before the drying-rate
+ * forecast ([ForecastIndex]) says the first plant will cross the threshold,
+ * or when a plant that is already low may be re-alerted. The periodic run
+ * scheduled by [MainActivity] is only a sparse safety net for plants
+ * without a forecast (just watered, or too few readings).
+ */
 class MoistureCheckWorker(
     context: Context,
     params: WorkerParameters
 ) : Worker(context, params) {
 
+    companion object {
+        /** Unique name of the planned one-time check */
+        const val NEXT_CHECK = "SoilMoistureNextCheck"
+        private const val KEY_PLANNED = "planned"
+
+        private const val LOW_PERCENT = 20
+        private const val LEAD_MS = 10 * 60 * 1_000L             // one row ahead of the crossing
+        private const val MIN_DELAY_MS = 15 * 60 * 1_000L
+        private const val MAX_DELAY_MS = 24 * 60 * 60 * 1_000L
+        private const val RECHECK_MS = 30 * 60 * 1_000L          // planned run found no new row
+        /** Log a cold forecast reads: several drying time constants, see [DryForecaster] */
+        private const val FORECAST_WINDOW_S = 48 * 60 * 60L
+
+        /**
+         * Run a check after [delayMs], replacing any planned one. [planned]
+         * runs that find no new reading re-check once after [RECHECK_MS].
+         * Replacing also ends a planned check that is still running, so a
+         * check calls this as its last step.
+         */
+        fun planNext(
+            context: Context,
+            delayMs: Long,
+            planned: Boolean = true,
+            policy: ExistingWorkPolicy = ExistingWorkPolicy.REPLACE
+        ) {
+            val work = OneTimeWorkRequestBuilder<MoistureCheckWorker>()
+                .setInitialDelay(delayMs, TimeUnit.MILLISECONDS)
+                .setInputData(workDataOf(KEY_PLANNED to planned))
+                .build()
+            WorkManager.getInstance(context).enqueueUniqueWork(NEXT_CHECK, policy, work)
+        }
+    }
+
     private val ALERT_INTERVAL_MS = 2 * 60 * 60 * 1_000L   // 2 hours
 
     override fun doWork(): Result {
@@ -35,43 +77,81 @@ class MoistureCheckWorker(
         }
 
         val plantCount = prefs.getInt("plantCount", 4).coerceIn(1, 9)
-        val sensorKeys = List(plantCount) { i -> "sensor_u$i" }
         val dryVals    = FloatArray(plantCount) { i -> prefs.getFloat("plant_${i + 1}_dry", 0f) }
         val wetVals    = FloatArray(plantCount) { i -> prefs.getFloat("plant_${i + 1}_wet", 100f) }
 
-        /* ----- fetch latest row ----- */
-        val body = try {
-            OkHttpClient().newCall(
-                Request.Builder()
-                    .url("https://g2f12813f9dfc61-garden.adb.eu-paris-1.oraclecloudapps.com/ords/admin/log/log")
-                    .build()
-            ).execute().use { it.body?.string() }
-        } catch (e: IOException) {
-            return Result.retry()
-        } ?: return Result.retry()
-
-        val items = JSONObject(body).getJSONArray("items")
-        if (items.length() == 0) return Result.success()
-        val latest = items.getJSONObject(items.length() - 1)
+        /* ----- fetch only the newest row, and only if the log changed since
+                 the last run (304 otherwise) ----- */
+        val etagKey = "latest_etag"
+        val modifiedKey = "latest_last_modified"
+        SensorLogRepository.attach(ctx)
+        val (series, validators) = SensorLogRepository.fetchIfChanged(
+            LogQuery.latest(),
+            CacheValidators(prefs.getString(etagKey, null), prefs.getString(modifiedKey, null))
+        ) ?: return Result.retry()
+        prefs.edit()
+            .putString(etagKey, validators.etag)
+            .putString(modifiedKey, validators.lastModified)
+            .apply()
+        // unchanged: this reading was already evaluated by the previous run;
+        // a planned run whose row is late looks once more, else the safety net
+        if (series == null || series.isEmpty()) {
+            if (inputData.getBoolean(KEY_PLANNED, false)) planNext(ctx, RECHECK_MS, planned = false)
+            return Result.success()
+        }
+        val latest = series.size - 1
 
         /* ----- per-plant evaluation ----- */
         val now = System.currentTimeMillis()
-        sensorKeys.forEachIndexed { idx, key ->
-            val raw = latest.optDouble(key, -1.0).toFloat()
-            if (raw < 0) return@forEachIndexed
+        var next = Long.MAX_VALUE                                 // wall-clock ms of the next check
+        val low = BooleanArray(plantCount)
+        for (idx in 0 until plantCount) {
+            val raw = series.value(SensorChannels.moisture(idx), latest)
+            if (raw.isNaN() || raw < 0) continue
 
             val ratio = ((raw - dryVals[idx]) /
                     (wetVals[idx] - dryVals[idx])).coerceIn(0f, 1f)
             val percent = (ratio * 100).toInt()
 
-            if (percent >= 20) return@forEachIndexed
+            if (percent >= LOW_PERCENT) continue
+            low[idx] = true
 
             val timeKey   = "plant_${idx + 1}_last_alert"
             val lastAlert = prefs.getLong(timeKey, 0L)
-            if (now - lastAlert < ALERT_INTERVAL_MS) return@forEachIndexed
+            if (now - lastAlert < ALERT_INTERVAL_MS) {
+                next = minOf(next, lastAlert + ALERT_INTERVAL_MS)
+                continue
+            }
 
             sendLowNotification(idx, percent, ctx)
             prefs.edit().putLong(timeKey, now).apply()
+            next = minOf(next, now + ALERT_INTERVAL_MS)
+        }
+
+        /* ----- plan the next run just before the first predicted crossing.
+                 Only reached when the newest row changed; the shared history is
+                 caught up if it is recent, otherwise (no cache yet, or a stale
+                 one) just the last FORECAST_WINDOW_S of the log is fetched ----- */
+        val since = now / 1000 - FORECAST_WINDOW_S
+        val shared = SensorLogRepository.reaches(since)
+        val history = when {
+            !shared -> SensorLogRepository.fetch(LogQuery(since = since))
+            SensorLogRepository.refreshBlocking() -> SensorLogRepository.series.value
+            else -> null
+        }
+        if (history != null) {
+            for (idx in 0 until plantCount) {
+                if (low[idx]) continue
+                val level = dryVals[idx] + LOW_PERCENT / 100f * (wetVals[idx] - dryVals[idx])
+                val forecast = (
+                    if (shared) ForecastIndex.forecast(history, idx, wetVals[idx], level)
+                    else ForecastIndex.forecastWindow(history, idx, wetVals[idx], level)
+                ) ?: continue
+                next = minOf(next, forecast.earliest * 1000L - LEAD_MS)
+            }
+        }
+        if (next != Long.MAX_VALUE) {
+            planNext(ctx, (next - now).coerceIn(MIN_DELAY_MS, MAX_DELAY_MS))
         }
         return Result.success()
     }
@@ -5,8 +5,6 @@ import android.content.pm.PackageManager
 import android.graphics.Color
 import android.os.Build
 import android.os.Bundle
-import android.os.Handler
-import android.os.Looper
 import android.preference.PreferenceManager
 import android.view.LayoutInflater
 import android.view.View
@@ -19,11 +17,12 @@ import androidx.core.app.NotificationCompat
 import androidx.core.app.NotificationManagerCompat
 import androidx.core.view.isGone
 import androidx.fragment.app.Fragment
-import okhttp3.*
-import org.json.JSONObject
-import java.io.IOException
+import androidx.lifecycle.Lifecycle
+import androidx.lifecycle.lifecycleScope
+import androidx.lifecycle.repeatOnLifecycle
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.launch
 import java.time.Duration
-import java.time.OffsetDateTime
 import java.time.format.DateTimeFormatter
 import kotlin.math.ceil
 import kotlin.math.roundToInt
@@ -51,17 +50,10 @@ class MoistureFragment : Fragment() {
     private val defaultWaveColor = Color.parseColor("#0097A7")
     private val alertWaveColor = Color.RED
 
-    /* ---- cache entire history from fetch once per update ------------ */
-    private var history: List<JSONObject> = emptyList()
-
-    /* ---- repeat-every-minute updater -------------------------------- */
-    private val handler = Handler(Looper.getMainLooper())
-    private val refreshRunnable = object : Runnable {
-        override fun run() {
-            fetchLatestMoisture()
-            handler.postDelayed(this, 60_000L)
-        }
-    }
+    /* ---- latest snapshot of the shared sensor log ------------------- */
+    private val history: SensorSeries             // the shared, immutable snapshot
+        get() = SensorLogRepository.series.value
+    private var statsJob: Job? = null
 
     /* ================================================================ */
     /*  Fragment lifecycle                                              */
@@ -152,135 +144,71 @@ class MoistureFragment : Fragment() {
             }
         }
 
-        handler.post(refreshRunnable)
         return root
     }
 
-    override fun onDestroyView() {
-        handler.removeCallbacks(refreshRunnable)
-        super.onDestroyView()
-    }
-
-    /* ================================================================ */
-    /*  Data fetch + UI update                                          */
-    /* ================================================================ */
-    private fun fetchLatestMoisture() {
-        OkHttpClient().newCall(
-            Request.Builder()
-                .url("https://g2f12813f9dfc61-garden.adb.eu-paris-1.oraclecloudapps.com/ords/admin/log/log")
-                .build()
-        ).enqueue(object : Callback {
-            override fun onFailure(call: Call, e: IOException) { /* ignore */ }
-
-            override fun onResponse(call: Call, response: Response) {
-                response.body?.string()?.let { body ->
-                    val arr = JSONObject(body).getJSONArray("items")
-                    history = List(arr.length()) { i -> arr.getJSONObject(i) }
-                    if (history.isEmpty()) return
-
-                    val latest = history.last()
-                    activity?.runOnUiThread {
-                        sensorKeys.forEachIndexed { i, key ->
-                            val raw = latest.optDouble(key, -1.0).toFloat()
-                            if (raw < 0) return@forEachIndexed
-
-                            /* convert raw → percentage */
-                            val ratio = ((raw - dryValues[i]) /
-                                    (wetValues[i] - dryValues[i])).coerceIn(0f, 1f)
-                            val percent = (ratio * 100).roundToInt()
-
-                            waveViews[i].apply {
-                                progress = ratio
-                                setWaveColor(
-                                    if (percent < 20) alertWaveColor else defaultWaveColor
-                                )
-                            }
-                            valueTexts[i].text = "$percent%"
+    override fun onViewCreated(view: View, savedInstanceState: Bundle?) {
+        super.onViewCreated(view, savedInstanceState)
+        viewLifecycleOwner.lifecycleScope.launch {
+            viewLifecycleOwner.repeatOnLifecycle(Lifecycle.State.STARTED) {
+                SensorLogRepository.series.collect { showLatestMoisture() }
+            }
+        }
 
-                            maybeNotify(i, percent)
-                            computeAndShowDryHit(i)
-                        }
-                    }
-                }
+        /* ---- keep the log polled while this screen is visible ---- */
+        viewLifecycleOwner.lifecycleScope.launch {
+            viewLifecycleOwner.repeatOnLifecycle(Lifecycle.State.STARTED) {
+                PollScheduler.whileVisible(requireContext())
             }
-        })
+        }
     }
 
     /* ================================================================ */
-    /*  Dry-hit prediction (uses SensorFragment’s exact slot logic)      */
+    /*  Data fetch + UI update                                          */
+    /*  All per-plant analytics run in parallel off the main thread;    */
+    /*  a newer snapshot cancels a recompute still in flight.           */
     /* ================================================================ */
-    private fun computeAndShowDryHit(idx: Int) {
+    private fun showLatestMoisture() {
         if (history.isEmpty()) return
 
-        val key = sensorKeys[idx]
-        val dry = dryValues[idx]
-        val wet = wetValues[idx]
-
-        val hideNight = true
-        val last24hOnly = false
-        val now = OffsetDateTime.now().plusHours(2)
-        val cutoff = now.minusHours(24)
-
-        /* 1) filter raw readings exactly like SensorFragment does */
-        val raw = history.mapNotNull { obj ->
-            val ts = OffsetDateTime.parse(obj.getString("created_at")).plusHours(2)
-            if (hideNight && ts.hour < 6) return@mapNotNull null
-            if (last24hOnly && ts.isBefore(cutoff)) return@mapNotNull null
-            val v = obj.optInt(key, -1).takeIf { it >= 0 } ?: return@mapNotNull null
-            ts to v.toFloat()
-        }.sortedBy { it.first }
-        if (raw.size < 2) return
-
-        /* 2) build 10-minute slot map (only real readings) */
-        val slotMap = raw.associateBy(
-            { it.first.withMinute(it.first.minute / 10 * 10).withSecond(0).withNano(0) },
-            { it.second }
-        )
-        val firstSlot = slotMap.keys.minOrNull()!!
-        val lastSlot = slotMap.keys.maxOrNull()!!
+        val snapshot = history
+        val thresholds = sensorKeys.indices.map { PlantThresholds(dryValues[it], wetValues[it]) }
+        statsJob?.cancel()
+        statsJob = viewLifecycleOwner.lifecycleScope.launch {
+            val stats = AnalyticsEngine.compute(snapshot, thresholds)
+            stats.plants.forEach { p ->
+                val percent = p.percent ?: return@forEach
+
+                waveViews[p.plant].apply {
+                    progress = percent / 100f
+                    setWaveColor(
+                        if (percent < 20) alertWaveColor else defaultWaveColor
+                    )
+                }
+                valueTexts[p.plant].text = "$percent%"
 
-        val entries = mutableListOf<Pair<Int, Pair<OffsetDateTime, Float>>>()
-        var pos = 0
-        var slot = firstSlot
-        while (!slot.isAfter(lastSlot)) {
-            if (!(hideNight && slot.hour < 6) && !(last24hOnly && slot.isBefore(cutoff))) {
-                slotMap[slot]?.let { v -> entries += pos to (slot to v) }
-                pos++
+                maybeNotify(p.plant, percent)
+                showDryHit(p)
             }
-            slot = slot.plusMinutes(10)
         }
-        if (entries.size < 2) return
+    }
 
-        /* 3) identical slope math as in SensorFragment */
-        val values = entries.map { it.second.second }
-        val stableCount = 3
-        var sIdx = values.indexOfFirst { it <= wet }.let { if (it == -1) 0 else it }
-        for (i in 1 until values.size - stableCount) {
-            if (values[i - 1] > wet && (0 until stableCount).all { j -> values[i + j] <= wet }) {
-                sIdx = i
-                break
-            }
+    /* ================================================================ */
+    /*  Dry-hit prediction (shared forecaster, same as the graph’s)      */
+    /* ================================================================ */
+    private fun showDryHit(p: PlantStats) {
+        val f = p.forecast
+        if (f == null) {
+            dryHitTexts[p.plant].text = "Expected dry hit: –"
+            return
         }
 
-        val startX = entries[sIdx].first.toFloat()
-        val startY = entries[sIdx].second.second
-        val endX = entries.last().first.toFloat()
-        val endY = entries.last().second.second
-        val dx = endX - startX
-        val dy = endY - startY
-        val slope = if (dx != 0f) dy / dx else 0f
-
-        activity?.runOnUiThread {
-            if (slope > 0 && endY < dry) {
-                val slotsToDry = (dry - endY) / slope    // in 10-min slots
-                val totalMin = slotsToDry * 10f          // convert to minutes
-                val hrs = totalMin.toInt() / 60
-                val mins = (totalMin - hrs * 60).toInt()
-                dryHitTexts[idx].text = "Expected dry hit in ${hrs} h ${mins} m"
-            } else {
-                dryHitTexts[idx].text = "Expected dry hit: –"
-            }
-        }
+        val now = System.currentTimeMillis() / 1000
+        fun hours(epoch: Long) = ((epoch - now).coerceAtLeast(0) / 3600.0).roundToInt()
+        val totalMin = (f.dryEpoch - now).coerceAtLeast(0) / 60
+        val band = f.latest?.let { "${hours(f.earliest)}–${hours(it)} h" }
+            ?: "≥ ${hours(f.earliest)} h"
+        dryHitTexts[p.plant].text = "Expected dry hit in ${totalMin / 60} h ${totalMin % 60} m ($band)"
     }
 
     /* ================================================================ */
@@ -0,0 +1,132 @@
+package com.example.soilmonitor
+
+import okhttp3.HttpUrl
+import okhttp3.HttpUrl.Companion.toHttpUrlOrNull
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import java.io.IOException
+import java.time.Instant
+
+/**
+ * What to fetch from the ORDS log; everything is pushed down to the server.
+ *
+ * @param since    only rows with `created_at` strictly after this epoch second
+ * @param limit    at most this many rows in total
+ * @param newestFirst order by `created_at` descending; only meaningful with
+ *                 `limit = 1`, since the store accepts rows oldest first
+ */
+data class LogQuery(
+    val since: Long? = null,
+    val limit: Int? = null,
+    val newestFirst: Boolean = false
+) {
+    init {
+        require(!newestFirst || limit == 1) { "newestFirst needs limit = 1" }
+    }
+
+    companion object {
+        /** Only the most recent row */
+        fun latest() = LogQuery(limit = 1, newestFirst = true)
+    }
+
+    fun toUrl(endpoint: HttpUrl, pageSize: Int): HttpUrl {
+        val filter = buildString {
+            append('{')
+            if (since != null) {
+                append("\"created_at\":{\"\$gt\":{\"\$date\":\"")
+                append(Instant.ofEpochSecond(since).toString())
+                append("\"}},")
+            }
+            append("\"\$orderby\":{\"created_at\":\"")
+            append(if (newestFirst) "desc" else "asc")
+            append("\"}}")
+        }
+        return endpoint.newBuilder()
+            .addQueryParameter("q", filter)
+            .addQueryParameter("limit", minOf(pageSize, limit ?: pageSize).toString())
+            .build()
+    }
+}
+
+/**
+ * HTTP validators of an earlier response, sent back as `If-None-Match` /
+ * `If-Modified-Since` so an unchanged resource answers 304 without a body.
+ */
+data class CacheValidators(val etag: String? = null, val lastModified: String? = null)
+
+/** Outcome of [OrdsLogClient.fetchIfChanged] */
+class ConditionalFetch(
+    /** False if the server answered 304; nothing was appended then */
+    val modified: Boolean,
+    val rows: Int,
+    /** Validators to send next time (the previous ones again after a 304) */
+    val validators: CacheValidators
+)
+
+/**
+ * Runs [LogQuery]s against the ORDS `log` endpoint and streams the result
+ * into a [SensorStore], following `hasMore`/`next` pagination links.
+ */
+class OrdsLogClient(
+    private val http: OkHttpClient,
+    private val endpoint: HttpUrl
+) {
+    companion object {
+        const val PAGE_SIZE = 1000
+        private const val MAX_PAGES = 1000
+    }
+
+    /**
+     * @return number of rows appended to [into]
+     * @throws IOException on network failure or a non-2xx response
+     */
+    fun fetch(query: LogQuery, into: SensorStore): Int = fetchIfChanged(query, into, null).rows
+
+    /**
+     * [fetch], made conditional on [validators] from an earlier response to
+     * the same [query]: if the first page is unchanged the server answers 304
+     * and nothing is read or appended.
+     *
+     * @throws IOException on network failure or a non-2xx, non-304 response
+     */
+    fun fetchIfChanged(
+        query: LogQuery, into: SensorStore, validators: CacheValidators?
+    ): ConditionalFetch {
+        var url: HttpUrl? = query.toUrl(endpoint, PAGE_SIZE)
+        var total = 0
+        var pages = 0
+        var latest = validators ?: CacheValidators()
+        while (url != null && pages++ < MAX_PAGES) {
+            val request = Request.Builder().url(url).apply {
+                if (pages == 1) {
+                    validators?.etag?.let { header("If-None-Match", it) }
+                    validators?.lastModified?.let { header("If-Modified-Since", it) }
+                }
+            }.build()
+            val page = http.newCall(request).execute().use { response ->
+                if (response.code == 304 && pages == 1) {
+                    return ConditionalFetch(false, 0, latest)
+                }
+                if (!response.isSuccessful) throw IOException("HTTP ${response.code}")
+                if (pages == 1) {
+                    latest =
+                        CacheValidators(response.header("ETag"), response.header("Last-Modified"))
+                }
+                val body = response.body ?: throw IOException("empty body")
+                // `next` links carry the server's page size, not what is left of the limit
+                val left = query.limit?.let { it - total } ?: Int.MAX_VALUE
+                try {
+                    SensorLogDecoder.decode(body.source(), into, left)
+                } catch (e: IllegalStateException) {
+                    throw IOException("malformed log response", e)
+                } catch (e: IllegalArgumentException) {
+                    throw IOException("malformed log response", e)
+                }
+            }
+            total += page.rows
+            if (query.limit != null && total >= query.limit) break
+            url = page.next?.toHttpUrlOrNull()
+        }
+        return ConditionalFetch(true, total, latest)
+    }
+}
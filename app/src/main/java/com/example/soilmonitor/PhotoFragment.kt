@@ -23,12 +23,13 @@ import kotlinx.coroutines.delay
 import kotlinx.coroutines.isActive
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
+import okhttp3.CacheControl
+import okhttp3.Request
 import java.io.File
 import java.io.FileOutputStream
-import java.net.HttpURLConnection
-import java.net.URL
 import java.text.SimpleDateFormat
 import java.util.*
+import java.util.concurrent.TimeUnit
 
 class PhotoFragment : Fragment() {
 
@@ -57,6 +58,20 @@ class PhotoFragment : Fragment() {
     // Base URL to fetch JPEG index pages and images
     private val SERVER_BASE = "http://kasiyip.be/shitting"
 
+    // Shared HTTP stack with this screen's timeouts (same pool and cache)
+    private val indexClient by lazy {
+        HttpStack.client.newBuilder()
+            .connectTimeout(5, TimeUnit.SECONDS)
+            .readTimeout(5, TimeUnit.SECONDS)
+            .build()
+    }
+    private val photoClient by lazy {
+        HttpStack.client.newBuilder()
+            .connectTimeout(5, TimeUnit.SECONDS)
+            .readTimeout(10, TimeUnit.SECONDS)
+            .build()
+    }
+
     // Coroutine Jobs for animation and live refresh
     private var animJob: Job? = null
     private var liveJob: Job? = null
@@ -432,35 +447,32 @@ class PhotoFragment : Fragment() {
 
 
     private fun fetchUrlAsString(urlStr: String): String? {
-        (URL(urlStr).openConnection() as? HttpURLConnection)?.let { conn ->
-            return try {
-                conn.requestMethod = "GET"
-                conn.connectTimeout = 5_000
-                conn.readTimeout = 5_000
-                conn.connect()
-                if (conn.responseCode == 200) {
-                    conn.inputStream.bufferedReader().use { it.readText() }
-                } else null
-            } catch (t: Throwable) {
-                Log.e("PhotoFragment", "Error fetching $urlStr", t)
-                null
-            } finally {
-                conn.disconnect()
+        // revalidate against the disk cache: an unchanged index costs a 304
+        val request = Request.Builder()
+            .url(urlStr)
+            .cacheControl(CacheControl.Builder().noCache().build())
+            .build()
+        return try {
+            indexClient.newCall(request).execute().use { resp ->
+                if (resp.code == 200) resp.body?.string() else null
             }
+        } catch (t: Throwable) {
+            Log.e("PhotoFragment", "Error fetching $urlStr", t)
+            null
         }
-        return null
     }
 
     private fun downloadFile(urlStr: String, destFile: File, index: Int, total: Int) {
-        (URL(urlStr).openConnection() as? HttpURLConnection)?.let { conn ->
-            try {
-                conn.requestMethod = "GET"
-                conn.connectTimeout = 5_000
-                conn.readTimeout = 10_000
-                conn.connect()
-
-                if (conn.responseCode == 200) {
-                    val length = conn.contentLength.takeIf { it > 0 } ?: -1
+        // photos are kept in localDir already, so keep them out of the HTTP cache
+        val request = Request.Builder()
+            .url(urlStr)
+            .cacheControl(CacheControl.Builder().noStore().build())
+            .build()
+        try {
+            photoClient.newCall(request).execute().use { resp ->
+                val body = resp.body
+                if (resp.code == 200 && body != null) {
+                    val length = body.contentLength().takeIf { it > 0 } ?: -1L
                     var bytesCopied = 0L
                     val buffer = ByteArray(8 * 1024)
                     var lastProgressUpdate = System.currentTimeMillis()
@@ -476,7 +488,7 @@ class PhotoFragment : Fragment() {
                         progressBarDownload.progress = 0
                     }
 
-                    conn.inputStream.use { input ->
+                    body.byteStream().use { input ->
                         FileOutputStream(destFile).use { out ->
                             var read: Int
                             while (input.read(buffer).also { read = it } != -1) {
@@ -527,18 +539,17 @@ class PhotoFragment : Fragment() {
                         tvDownloadInfo.text = "${destFile.name} (100%)"
                     }
 
-                    destFile.setLastModified(conn.lastModified.takeIf { it > 0 } ?: System.currentTimeMillis())
+                    val lastModified = resp.headers.getDate("Last-Modified")?.time
+                    destFile.setLastModified(lastModified?.takeIf { it > 0 } ?: System.currentTimeMillis())
                 } else {
-                    throw Exception("HTTP ${conn.responseCode}")
-                }
-            } catch (t: Throwable) {
-                Log.e("PhotoFragment", "Error downloading $urlStr", t)
-                lifecycleScope.launch(Dispatchers.Main) {
-                    tvDownloadError.visibility = View.VISIBLE
-                    tvDownloadError.text = "Failed: ${t.message}"
+                    throw Exception("HTTP ${resp.code}")
                 }
-            } finally {
-                conn.disconnect()
+            }
+        } catch (t: Throwable) {
+            Log.e("PhotoFragment", "Error downloading $urlStr", t)
+            lifecycleScope.launch(Dispatchers.Main) {
+                tvDownloadError.visibility = View.VISIBLE
+                tvDownloadError.text = "Failed: ${t.message}"
             }
         }
     }
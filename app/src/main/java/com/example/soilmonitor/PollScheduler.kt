@@ -0,0 +1,128 @@
+package com.example.soilmonitor
+
+import android.content.Context
+import android.os.Handler
+import android.os.Looper
+import android.os.SystemClock
+import android.preference.PreferenceManager
+import kotlinx.coroutines.awaitCancellation
+import kotlin.random.Random
+
+/**
+ * The one poller of the sensor log, shared by every screen.
+ *
+ * The sensor writes a row about every 10 minutes, so polling every minute
+ * mostly asks for nothing. Instead the scheduler learns the write cadence
+ * from the `created_at` deltas of the newest rows and polls just after the
+ * next row is due ([SETTLE_MS] for the upload plus up to [JITTER_MS] of
+ * jitter). A poll that finds nothing new retries with a doubling back-off;
+ * the user's `refreshInterval` (minutes, from Settings) is the longest it
+ * ever waits.
+ *
+ * Polling only runs while at least one screen is [visible][whileVisible];
+ * the next due time survives a switch between screens, so navigating does
+ * not trigger extra polls. Background checks stay with [MoistureCheckWorker].
+ *
+ * Visible screens also get the [LiveFeed] long-poll; while it is connected
+ * timed polls are skipped, and they take over again as soon as it drops.
+ *
+ * Main thread only, apart from the blocking sync itself.
+ */
+object PollScheduler {
+
+    private const val DEFAULT_CADENCE_S = 600L
+    private const val CADENCE_SAMPLES = 12
+    private const val SETTLE_MS = 20_000L
+    private const val JITTER_MS = 15_000L
+    private const val MIN_DELAY_MS = 15_000L
+    private const val LATE_BACKOFF_MS = 30_000L
+    private const val DEFAULT_INTERVAL_MIN = 5
+
+    private val handler = Handler(Looper.getMainLooper())
+    private val tick = Runnable { poll() }
+
+    private var context: Context? = null
+    private var visible = 0
+    private var polling = false
+    private var dueAt = 0L                      // elapsedRealtime of the next poll; 0 = now
+    private var misses = 0                      // polls in a row without a new row
+
+    /**
+     * Keep the log polled until the calling coroutine is cancelled; meant for
+     * `repeatOnLifecycle(Lifecycle.State.STARTED)` in a screen's view scope.
+     */
+    suspend fun whileVisible(context: Context) {
+        this.context = context.applicationContext
+        if (visible++ == 0) {
+            LiveFeed.start()
+            if (!polling) schedule(dueAt - SystemClock.elapsedRealtime())
+        }
+        try {
+            awaitCancellation()
+        } finally {
+            if (--visible == 0) {
+                handler.removeCallbacks(tick)
+                LiveFeed.stop()
+            }
+        }
+    }
+
+    /** Upper bound between polls, from the Settings screen */
+    private fun maxDelayMs(): Long {
+        val ctx = context ?: return DEFAULT_INTERVAL_MIN * 60_000L
+        val minutes = PreferenceManager.getDefaultSharedPreferences(ctx)
+            .getInt("refreshInterval", DEFAULT_INTERVAL_MIN)
+        return minutes.coerceAtLeast(1) * 60_000L
+    }
+
+    private fun schedule(delayMs: Long) {
+        handler.removeCallbacks(tick)
+        val delay = delayMs.coerceAtLeast(0L)
+        dueAt = SystemClock.elapsedRealtime() + delay
+        handler.postDelayed(tick, delay)
+    }
+
+    private fun poll() {
+        if (LiveFeed.connected) {
+            // rows are pushed; just check again when the next one is due
+            misses = 0
+            schedule(nextDelayMs(SensorLogRepository.series.value, System.currentTimeMillis()))
+            return
+        }
+        polling = true
+        val before = SensorLogRepository.series.value.size
+        SensorLogRepository.refresh { ok ->
+            val grew = SensorLogRepository.series.value.size > before
+            handler.post {
+                polling = false
+                misses = if (ok && grew) 0 else misses + 1
+                val delay = nextDelayMs(SensorLogRepository.series.value, System.currentTimeMillis())
+                if (visible > 0) schedule(delay) else dueAt = SystemClock.elapsedRealtime() + delay
+            }
+        }
+    }
+
+    /**
+     * Wait until just after the row following the newest one is due, or back
+     * off while that row is late (or the server unreachable).
+     */
+    private fun nextDelayMs(series: SensorSeries, nowMs: Long): Long {
+        val cap = maxDelayMs()
+        if (series.isEmpty()) return cap
+        val expectedMs = (series.epochAt(series.size - 1) + cadence(series)) * 1000L + SETTLE_MS
+        val delay =
+            if (misses == 0 && expectedMs > nowMs) expectedMs - nowMs
+            else LATE_BACKOFF_MS shl misses.coerceAtMost(6)
+        return (delay + Random.nextLong(JITTER_MS)).coerceIn(MIN_DELAY_MS, cap)
+    }
+
+    /** Median of the newest `created_at` deltas, in seconds; robust to gaps and bursts */
+    private fun cadence(series: SensorSeries): Long {
+        val n = minOf(CADENCE_SAMPLES, series.size - 1)
+        if (n <= 0) return DEFAULT_CADENCE_S
+        val r = series.reader()
+        val deltas = LongArray(n) { r.epochAt(series.size - 1 - it) - r.epochAt(series.size - 2 - it) }
+        deltas.sort()
+        return deltas[n / 2].takeIf { it > 0 } ?: DEFAULT_CADENCE_S
+    }
+}
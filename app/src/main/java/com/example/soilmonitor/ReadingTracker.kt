@@ -0,0 +1,242 @@
+package com.example.soilmonitor
+
+import java.io.ByteArrayOutputStream
+import java.io.DataInput
+import java.io.DataInputStream
+import java.io.DataOutput
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Base for per-channel state machines that consume the [valid] readings of
+ * one channel exactly once each as the shared log grows.
+ */
+abstract class ReadingTracker(private val channel: Int) {
+
+    private var lineage = 0L                 // store of the last fed series; 0 after restore
+    private var rows = 0
+    private var firstEpoch = Long.MIN_VALUE
+    private var lastRowEpoch = Long.MIN_VALUE
+
+    /**
+     * True if this tracker has seen a prefix of [series] or [series] is a
+     * prefix of what it has seen; a shorter snapshot is simply answered from
+     * the newer state. Snapshots of the store it was fed from always qualify;
+     * others (e.g. after a [PersistentTracker.restore]) are compared by their
+     * epochs.
+     */
+    fun follows(series: SensorSeries): Boolean {
+        if (series.isEmpty() || rows == 0 || series.lineage == lineage) return true
+        if (series.epochAt(0) != firstEpoch) return false
+        return series.size < rows || series.epochAt(rows - 1) == lastRowEpoch
+    }
+
+    /** Consume the rows [series] has beyond those already seen */
+    fun feed(series: SensorSeries) {
+        if (series.size <= rows) return
+        if (rows == 0) firstEpoch = series.epochAt(0)
+        val reader = series.reader()
+        for (r in rows until series.size) {
+            val v = reader.value(channel, r)
+            if (valid(v)) accept(reader.epochAt(r), v)
+        }
+        rows = series.size
+        lastRowEpoch = series.epochAt(rows - 1)
+        lineage = series.lineage
+    }
+
+    /**
+     * Write how far this tracker got, for a [PersistentTracker.save].
+     * [follows] still decides whether a restored tracker fits the log it is
+     * used with.
+     */
+    protected fun saveProgress(out: DataOutput) {
+        out.writeInt(rows)
+        out.writeLong(firstEpoch)
+        out.writeLong(lastRowEpoch)
+    }
+
+    /** Counterpart of [saveProgress], on a freshly created tracker */
+    protected fun restoreProgress(inp: DataInput) {
+        rows = inp.readInt()
+        firstEpoch = inp.readLong()
+        lastRowEpoch = inp.readLong()
+    }
+
+    /** Which readings count; moisture sensors report negative values on error */
+    protected open fun valid(v: Float): Boolean = v >= 0
+
+    /** One valid reading, in time order */
+    protected abstract fun accept(epoch: Long, v: Float)
+}
+
+/**
+ * A [ReadingTracker] that can be written to disk and resumed later, so a
+ * cold start does not replay the whole log. Implementations save their
+ * progress ([ReadingTracker.saveProgress]) followed by their own state.
+ */
+interface PersistentTracker {
+    fun save(out: DataOutput)
+
+    /** Counterpart of [save], on a freshly created tracker */
+    fun restore(inp: DataInput)
+}
+
+/**
+ * Process-wide trackers, one per [K] (e.g. plant and wet threshold), kept in
+ * step with the shared sensor log. A tracker is rebuilt only when the log it
+ * followed was replaced. Each tracker has its own lock, so different keys can
+ * be caught up in parallel.
+ */
+class TrackerIndex<K, T : ReadingTracker>(private val create: (K) -> T) {
+
+    private class Slot<T> {
+        var tracker: T? = null
+    }
+
+    private val slots = HashMap<K, Slot<T>>()
+
+    /** Keys queried or [put] so far, e.g. to catch all of them up on ingest */
+    fun keys(): List<K> = synchronized(slots) { slots.keys.toList() }
+
+    /** Install a tracker restored from disk, unless [key] already has one */
+    fun put(key: K, tracker: T) {
+        val slot = synchronized(slots) { slots.getOrPut(key) { Slot() } }
+        synchronized(slot) { if (slot.tracker == null) slot.tracker = tracker }
+    }
+
+    /** Read the tracker of [key] as it is, without catching it up; null if none */
+    fun <R> peek(key: K, read: (T) -> R): R? {
+        val slot = synchronized(slots) { slots[key] } ?: return null
+        synchronized(slot) { return slot.tracker?.let(read) }
+    }
+
+    /** Drop the tracker of [key] */
+    fun remove(key: K) {
+        synchronized(slots) { slots.remove(key) }
+    }
+
+    /** Catch the tracker of [key] up with [series] and [read] it */
+    fun <R> query(series: SensorSeries, key: K, read: (T) -> R): R {
+        val slot = synchronized(slots) { slots.getOrPut(key) { Slot() } }
+        synchronized(slot) {
+            var t = slot.tracker
+            if (t == null || !t.follows(series)) {
+                t = create(key)
+                slot.tracker = t
+            }
+            t.feed(series)
+            return read(t)
+        }
+    }
+}
+
+/**
+ * A [TrackerIndex] keyed by plant and wet threshold whose trackers are saved
+ * to a small file, so a cold start resumes each one from its saved state and
+ * feeds it only the rows logged since.
+ *
+ * [SensorLogRepository] drives [attach], [load] and [ingest]. A saved tracker
+ * that no longer [fits][ReadingTracker.follows] the log (e.g. the cache was
+ * dropped) is simply rebuilt. Trackers not queried for [KEEP_UNUSED_MS]
+ * (thresholds changed since) are dropped when saving.
+ */
+class SavedTrackerIndex<T>(
+    private val magic: Int,
+    private val version: Int,
+    private val create: (Pair<Int, Float>) -> T
+) where T : ReadingTracker, T : PersistentTracker {
+
+    companion object {
+        const val KEEP_UNUSED_MS = 30 * 86_400_000L
+    }
+
+    private val index = TrackerIndex(create)
+    private val lastUsed = ConcurrentHashMap<Pair<Int, Float>, Long>()
+
+    @Volatile
+    private var file: File? = null
+
+    /**
+     * Catch the tracker of [plant] and [wet] up with [series] and [read] it.
+     * A tracker built for a new key is saved right away, so the next process
+     * does not replay the whole log for it again.
+     */
+    fun <R> query(series: SensorSeries, plant: Int, wet: Float, read: (T) -> R): R {
+        val key = plant to wet
+        val known = lastUsed.put(key, System.currentTimeMillis()) != null
+        return index.query(series, key, read).also { if (!known) save() }
+    }
+
+    /** Keep the trackers in [f]; call before [load] */
+    fun attach(f: File) {
+        file = f
+    }
+
+    /**
+     * Install the trackers saved in the attached file. An unreadable or
+     * incompatible file is deleted; the trackers are then rebuilt on demand.
+     */
+    fun load() {
+        val f = file ?: return
+        if (!f.exists()) return
+        try {
+            DataInputStream(f.inputStream().buffered()).use { inp ->
+                if (inp.readInt() != magic || inp.readInt() != version) {
+                    throw IOException("incompatible tracker file ${f.name}")
+                }
+                repeat(inp.readInt()) {
+                    val key = inp.readInt() to inp.readFloat()
+                    val used = inp.readLong()
+                    val t = create(key)
+                    t.restore(inp)
+                    index.put(key, t)
+                    lastUsed.putIfAbsent(key, used)
+                }
+            }
+        } catch (e: IOException) {
+            f.delete()
+        }
+    }
+
+    /** Catch every tracker up with newly ingested rows and save the result */
+    fun ingest(series: SensorSeries) {
+        val now = System.currentTimeMillis()
+        for (key in index.keys()) {
+            if (now - (lastUsed[key] ?: 0L) > KEEP_UNUSED_MS) {
+                index.remove(key)
+                lastUsed.remove(key)
+            } else {
+                index.query(series, key) { }
+            }
+        }
+        save()
+    }
+
+    @Synchronized
+    private fun save() {
+        val f = file ?: return
+        val bytes = ByteArrayOutputStream()
+        DataOutputStream(bytes).use { out ->
+            val keys = index.keys()
+            out.writeInt(magic)
+            out.writeInt(version)
+            out.writeInt(keys.size)
+            for (key in keys) {
+                out.writeInt(key.first)
+                out.writeFloat(key.second)
+                out.writeLong(lastUsed[key] ?: 0L)
+                index.peek(key) { it.save(out) } ?: create(key).save(out)
+            }
+        }
+        try {
+            val tmp = File(f.path + ".tmp")
+            tmp.writeBytes(bytes.toByteArray())
+            if (!tmp.renameTo(f)) throw IOException("rename failed")
+        } catch (e: IOException) {
+            /* best effort – the trackers can always be rebuilt from the log */
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.soilmonitor
+
+import kotlin.math.sqrt
+
+/**
+ * Min, max, mean and (population) standard deviation of the [count] readings
+ * in the last [window] seconds; NaN while the window is empty.
+ */
+data class RollingStats(
+    val window: Long,
+    val count: Int,
+    val min: Float,
+    val max: Float,
+    val mean: Float,
+    val stddev: Float
+) {
+    /** Window length for display, e.g. "24 h" or "7 d" */
+    val label: String
+        get() = if (window % 86_400L == 0L && window > 86_400L) "${window / 86_400L} d"
+                else "${window / 3600L} h"
+
+    /** "min–max (mean ± sd)" with one decimal, or "–" while empty */
+    fun describe(): String =
+        if (count == 0) "–"
+        else "%.1f–%.1f (%.1f ± %.1f)".format(min, max, mean, stddev)
+}
+
+/**
+ * Readings of one channel in a sliding window of [seconds], ending at the
+ * newest reading. Every reading is added once and evicted once, so [add] is
+ * O(1) amortized and [stats] O(1):
+ *
+ * - min and max come from monotonic deques of reading sequence numbers (a
+ *   reading is dropped from the min deque once a smaller one arrives after
+ *   it, since it can never be the minimum again);
+ * - mean and variance come from running sums, kept relative to the first
+ *   reading so they stay accurate as values come and go.
+ */
+class RollingWindow(val seconds: Long) {
+
+    private var epochs = LongArray(16)
+    private var values = FloatArray(16)
+    private var first = 0L                   // sequence number of the oldest kept reading
+    private var next = 0L                    // sequence number of the next reading
+    private val minQ = SeqDeque()            // increasing values, oldest first
+    private val maxQ = SeqDeque()            // decreasing values, oldest first
+    private var shift = Float.NaN
+    private var sum = 0.0
+    private var sumSq = 0.0
+
+    /** Add a reading; readings must arrive in time order. */
+    fun add(epoch: Long, v: Float) {
+        if (next - first == epochs.size.toLong()) grow()
+        if (shift.isNaN()) shift = v
+        val i = slot(next)
+        epochs[i] = epoch
+        values[i] = v
+        while (!minQ.isEmpty() && values[slot(minQ.last())] >= v) minQ.removeLast()
+        minQ.addLast(next)
+        while (!maxQ.isEmpty() && values[slot(maxQ.last())] <= v) maxQ.removeLast()
+        maxQ.addLast(next)
+        val d = (v - shift).toDouble()
+        sum += d
+        sumSq += d * d
+        next++
+
+        /* keep (epoch - seconds, epoch] */
+        while (epochs[slot(first)] <= epoch - seconds) {
+            val old = (values[slot(first)] - shift).toDouble()
+            sum -= old
+            sumSq -= old * old
+            if (minQ.first() == first) minQ.removeFirst()
+            if (maxQ.first() == first) maxQ.removeFirst()
+            first++
+        }
+    }
+
+    fun stats(): RollingStats {
+        val n = (next - first).toInt()
+        if (n == 0) return RollingStats(seconds, 0, Float.NaN, Float.NaN, Float.NaN, Float.NaN)
+        val mean = sum / n
+        val variance = (sumSq / n - mean * mean).coerceAtLeast(0.0)
+        return RollingStats(
+            window = seconds,
+            count = n,
+            min = values[slot(minQ.first())],
+            max = values[slot(maxQ.first())],
+            mean = (shift + mean).toFloat(),
+            stddev = sqrt(variance).toFloat()
+        )
+    }
+
+    private fun slot(seq: Long): Int = (seq and (epochs.size - 1).toLong()).toInt()
+
+    /** Double the ring (its size stays a power of two) keeping sequence numbers */
+    private fun grow() {
+        val e = LongArray(epochs.size * 2)
+        val v = FloatArray(values.size * 2)
+        val mask = (e.size - 1).toLong()
+        for (s in first until next) {
+            e[(s and mask).toInt()] = epochs[slot(s)]
+            v[(s and mask).toInt()] = values[slot(s)]
+        }
+        epochs = e
+        values = v
+    }
+
+    /** Double-ended queue of sequence numbers on a growable ring */
+    private class SeqDeque {
+        private var items = LongArray(16)
+        private var head = 0
+        private var size = 0
+
+        fun isEmpty() = size == 0
+        fun first(): Long = items[head]
+        fun last(): Long = items[(head + size - 1) and (items.size - 1)]
+
+        fun addLast(seq: Long) {
+            if (size == items.size) {
+                val grown = LongArray(items.size * 2)
+                for (k in 0 until size) grown[k] = items[(head + k) and (items.size - 1)]
+                items = grown
+                head = 0
+            }
+            items[(head + size) and (items.size - 1)] = seq
+            size++
+        }
+
+        fun removeFirst() {
+            head = (head + 1) and (items.size - 1)
+            size--
+        }
+
+        fun removeLast() {
+            size--
+        }
+    }
+}
+
+/** The [RollingWindow]s of one channel, one per [RollingIndex.WINDOWS] */
+private class RollingTracker(private val channel: Int) : ReadingTracker(channel) {
+
+    val windows = RollingIndex.WINDOWS.map { RollingWindow(it) }
+
+    override fun valid(v: Float) = SensorChannels.isValid(channel, v)
+
+    override fun accept(epoch: Long, v: Float) {
+        for (w in windows) w.add(epoch, v)
+    }
+}
+
+/**
+ * Process-wide rolling statistics of every channel over [WINDOWS], kept in
+ * step with the shared log: a poll costs O(1) per new reading, whatever the
+ * window length. Windows end at the channel's newest reading.
+ */
+object RollingIndex {
+
+    const val HOUR = 3600L
+    const val DAY = 24 * HOUR
+    const val WEEK = 7 * DAY
+
+    /** The window lengths tracked for every channel */
+    val WINDOWS = longArrayOf(HOUR, DAY, WEEK)
+
+    private val index = TrackerIndex { channel: Int -> RollingTracker(channel) }
+
+    /** Stats of [channel] over every window, in [WINDOWS] order */
+    fun stats(series: SensorSeries, channel: Int): List<RollingStats> =
+        index.query(series, channel) { t -> t.windows.map { it.stats() } }
+}
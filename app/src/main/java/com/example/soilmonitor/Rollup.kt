@@ -0,0 +1,135 @@
+package com.example.soilmonitor
+
+import java.time.ZoneId
+
+/**
+ * Incrementally maintained rollup of the sensor log into buckets (hours or
+ * local days, as given by [key]): per channel the min, max, mean, count and
+ * last of its valid readings (see [SensorChannels.isValid]). Only buckets
+ * that received a row exist, so long gaps cost nothing. Columns are
+ * compressed like the store's; the open bucket's mean comes from a running
+ * double sum.
+ *
+ * Owned by [SensorStore], which feeds it every appended row. Like [SlotGrid]
+ * it only writes past the published size, except for the newest bucket, which
+ * every snapshot keeps its own copy of (see [FloatColumnBuilder]), so
+ * [snapshot]s are immutable while it grows.
+ */
+class RollupBuilder(private val clock: LocalClock, private val key: (Long) -> Long) {
+
+    private val epochs = EpochColumnBuilder()
+    private val min = Array(SensorChannels.COUNT) { FloatColumnBuilder() }
+    private val max = Array(SensorChannels.COUNT) { FloatColumnBuilder() }
+    private val last = Array(SensorChannels.COUNT) { FloatColumnBuilder() }
+    private val mean = Array(SensorChannels.COUNT) { FloatColumnBuilder() }
+    private val count = Array(SensorChannels.COUNT) { FloatColumnBuilder() }
+    private val night = RowMaskBuilder()
+    private var size = 0
+
+    /* ---- running sums of the open (newest) bucket ---- */
+    private var openKey = 0L
+    private val sum = DoubleArray(SensorChannels.COUNT)
+    private val n = IntArray(SensorChannels.COUNT)
+
+    /** Record one row; rows must arrive in time order. */
+    fun add(epoch: Long, values: FloatArray) {
+        val k = key(epoch)
+        if (size == 0 || k != openKey) {
+            openKey = k
+            epochs.add(epoch)
+            for (c in 0 until SensorChannels.COUNT) {
+                min[c].add(Float.NaN)
+                max[c].add(Float.NaN)
+                last[c].add(Float.NaN)
+                mean[c].add(Float.NaN)
+                count[c].add(0f)
+            }
+            sum.fill(0.0)
+            n.fill(0)
+            night.add(clock.isNight(epoch))
+            size++
+        }
+        val b = size - 1
+        for (c in values.indices) {
+            val v = values[c]
+            if (!SensorChannels.isValid(c, v)) continue
+            if (n[c] == 0 || v < min[c][b]) min[c][b] = v
+            if (n[c] == 0 || v > max[c][b]) max[c][b] = v
+            last[c][b] = v
+            sum[c] += v
+            n[c]++
+            mean[c][b] = (sum[c] / n[c]).toFloat()
+            count[c][b] = n[c].toFloat()
+        }
+    }
+
+    fun snapshot(): RollupSeries = RollupSeries(
+        epochs.snapshot(), snap(min), snap(max), snap(last), snap(mean), snap(count),
+        size, night.snapshot(), clock.zone
+    )
+
+    private fun snap(cols: Array<FloatColumnBuilder>) = Array(cols.size) { cols[it].snapshot() }
+}
+
+/**
+ * Read-only view of the first [size] buckets of a [RollupBuilder], oldest
+ * first. Each bucket is stamped with the epoch of its first row.
+ */
+class RollupSeries internal constructor(
+    private val epochs: EpochColumn,
+    private val min: Array<FloatColumn>,
+    private val max: Array<FloatColumn>,
+    private val last: Array<FloatColumn>,
+    private val mean: Array<FloatColumn>,
+    private val count: Array<FloatColumn>,
+    val size: Int,
+    private val night: RowMask,
+    private val nightZone: ZoneId
+) {
+    companion object {
+        private val NONE = Array(SensorChannels.COUNT) { FloatColumn.EMPTY }
+
+        val EMPTY = RollupSeries(
+            EpochColumn.EMPTY, NONE, NONE, NONE, NONE, NONE, 0, RowMask.EMPTY, ZoneId.systemDefault()
+        )
+    }
+
+    fun isEmpty() = size == 0
+
+    /** Epoch of the first row in bucket [b] */
+    fun epochAt(b: Int): Long = epochs[b]
+
+    /* single lookups decode a whole compressed block; walks use a [reader] */
+    fun min(channel: Int, b: Int): Float = min[channel][b]
+    fun max(channel: Int, b: Int): Float = max[channel][b]
+    fun last(channel: Int, b: Int): Float = last[channel][b]
+    fun count(channel: Int, b: Int): Int = count[channel][b].toInt()
+
+    /** Mean of [channel] in bucket [b], NaN if it had no valid reading */
+    fun mean(channel: Int, b: Int): Float = mean[channel][b]
+
+    /** Sequential access to bucket epochs and means, decoding each block once */
+    fun reader(): Reader = Reader()
+
+    /** First bucket stamped at or after [epoch], [size] if none; O(log n) */
+    fun indexAtOrAfter(epoch: Long): Int = epochs.indexAtOrAfter(epoch)
+
+    /** Buckets starting at night in [zone]; see [SensorSeries.nightMask] */
+    fun nightMask(zone: ZoneId = ZoneId.systemDefault()): RowMask {
+        if (zone == nightZone) return night
+        val clock = LocalClock(zone)
+        val r = epochs.reader()
+        return RowMask.build(size) { clock.isNight(r[it]) }
+    }
+
+    /** Not thread-safe: each walk takes its own */
+    inner class Reader {
+        private val epochReader = epochs.reader()
+        private val means = arrayOfNulls<FloatColumn.Reader>(mean.size)
+
+        fun epochAt(b: Int): Long = epochReader[b]
+
+        fun mean(channel: Int, b: Int): Float =
+            (means[channel] ?: mean[channel].reader().also { means[channel] = it })[b]
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.soilmonitor
+
+/**
+ * Append-only bitset with one bit per row (or slot position), packed into
+ * 64-bit words. Owned by [SensorStore] and [SlotGrid], which add a bit for
+ * every row they append.
+ *
+ * Full words are never written again once the next word is started, so a
+ * [RowMask] from [snapshot] shares them and only copies the partial last word.
+ */
+class RowMaskBuilder {
+
+    private var words = LongArray(16)
+    private var size = 0
+
+    fun add(bit: Boolean) {
+        val w = size ushr 6
+        if (w == words.size) words = words.copyOf(words.size * 2)
+        if (bit) words[w] = words[w] or (1L shl (size and 63))
+        size++
+    }
+
+    fun snapshot(): RowMask =
+        RowMask(words, size, if (size and 63 != 0) words[size ushr 6] else 0L)
+}
+
+/** Read-only view of the first [size] bits of a [RowMaskBuilder] */
+class RowMask internal constructor(
+    private val words: LongArray,
+    val size: Int,
+    private val tail: Long
+) {
+    companion object {
+        val EMPTY = RowMask(LongArray(0), 0, 0L)
+
+        /** Mask of [size] rows whose bit is [bit] (row) */
+        inline fun build(size: Int, bit: (Int) -> Boolean): RowMask {
+            val b = RowMaskBuilder()
+            for (i in 0 until size) b.add(bit(i))
+            return b.snapshot()
+        }
+    }
+
+    /** Bits 64·[w] until 64·[w]+63 */
+    fun word(w: Int): Long = if (w == size ushr 6) tail else words[w]
+
+    operator fun get(i: Int): Boolean = (word(i ushr 6) ushr (i and 63)) and 1L != 0L
+
+    /**
+     * Call [action] for every row in [from, to) whose bit is clear, a word at
+     * a time: rows under set bits are never looked at.
+     */
+    inline fun forEachClear(from: Int, to: Int, action: (Int) -> Unit) {
+        if (from >= to) return
+        val last = (to - 1) ushr 6
+        for (w in from ushr 6..last) {
+            var bits = word(w).inv()
+            if (w == from ushr 6) bits = bits and (-1L shl (from and 63))
+            if (w == last && to and 63 != 0) bits = bits and ((1L shl (to and 63)) - 1)
+            while (bits != 0L) {
+                action((w shl 6) + java.lang.Long.numberOfTrailingZeros(bits))
+                bits = bits and (bits - 1)
+            }
+        }
+    }
+}
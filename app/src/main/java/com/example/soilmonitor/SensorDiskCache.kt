@@ -0,0 +1,106 @@
+package com.example.soilmonitor
+
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+
+/**
+ * Append-only on-device copy of the sensor log.
+ *
+ * Layout: a 16-byte header (magic, version, channel count, reserved)
+ * followed by fixed-width little-endian records of one epoch second (long)
+ * and [SensorChannels.COUNT] floats. Loading memory-maps the file and copies
+ * the records straight into a [SensorStore]; syncing appends only the new
+ * rows. A torn last record (app killed mid-write) is dropped on load.
+ *
+ * Derived tables (slot raster, hourly and daily rollups) are not stored:
+ * the store rebuilds them in the same pass as the records are loaded.
+ */
+class SensorDiskCache(private val file: File) {
+
+    companion object {
+        private const val MAGIC = 0x534f494c          // "SOIL"
+        private const val VERSION = 1
+        private const val HEADER_BYTES = 16
+        val RECORD_BYTES = 8 + 4 * SensorChannels.COUNT
+    }
+
+    /**
+     * Append every cached record to [store] (which is expected to be empty).
+     * An unreadable or incompatible file is deleted so the next sync starts
+     * from scratch.
+     *
+     * @return number of rows loaded
+     */
+    fun loadInto(store: SensorStore): Int {
+        if (!file.exists()) return 0
+        return try {
+            RandomAccessFile(file, "r").channel.use { ch ->
+                val size = ch.size()
+                if (size < HEADER_BYTES) throw IOException("short header")
+                val buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                if (buf.getInt() != MAGIC || buf.getInt() != VERSION ||
+                    buf.getInt() != SensorChannels.COUNT) throw IOException("incompatible cache")
+                buf.position(HEADER_BYTES)
+
+                val records = ((size - HEADER_BYTES) / RECORD_BYTES).toInt()
+                val row = FloatArray(SensorChannels.COUNT)
+                var loaded = 0
+                repeat(records) {
+                    val epoch = buf.getLong()
+                    for (c in row.indices) row[c] = buf.getFloat()
+                    if (epoch > store.lastEpoch) {
+                        store.append(epoch, row)
+                        loaded++
+                    }
+                }
+                loaded
+            }
+        } catch (e: IOException) {
+            file.delete()
+            0
+        }
+    }
+
+    /** Append rows [from] until [to] of [series] to the file */
+    fun append(series: SensorSeries, from: Int, to: Int) {
+        if (from >= to) return
+        try {
+            RandomAccessFile(file, "rw").channel.use { ch ->
+                var end = ch.size()
+                if (end < HEADER_BYTES) {
+                    ch.truncate(0)
+                    ch.write(header(), 0)
+                    end = HEADER_BYTES.toLong()
+                }
+                // drop a torn trailing record before appending
+                end -= (end - HEADER_BYTES) % RECORD_BYTES
+
+                val buf = ByteBuffer.allocate((to - from) * RECORD_BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                val reader = series.reader()
+                for (r in from until to) {
+                    buf.putLong(reader.epochAt(r))
+                    for (c in 0 until SensorChannels.COUNT) buf.putFloat(reader.value(c, r))
+                }
+                buf.flip()
+                while (buf.hasRemaining()) end += ch.write(buf, end)
+            }
+        } catch (e: IOException) {
+            /* cache is best effort – the network copy is authoritative */
+        }
+    }
+
+    private fun header(): ByteBuffer =
+        ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN).apply {
+            putInt(MAGIC)
+            putInt(VERSION)
+            putInt(SensorChannels.COUNT)
+            putInt(0)
+            flip()
+        }
+}
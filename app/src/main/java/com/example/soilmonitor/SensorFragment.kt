@@ -2,8 +2,6 @@ package com.example.soilmonitor
 
 import android.content.SharedPreferences
 import android.os.Bundle
-import android.os.Handler
-import android.os.Looper
 import android.preference.PreferenceManager
 import android.text.TextUtils
 import android.view.Gravity
@@ -18,29 +16,30 @@ import android.widget.RadioButton
 import android.widget.RadioGroup
 import android.widget.TextView
 import androidx.fragment.app.Fragment
+import androidx.lifecycle.Lifecycle
+import androidx.lifecycle.lifecycleScope
+import androidx.lifecycle.repeatOnLifecycle
 import com.github.mikephil.charting.charts.LineChart
 import com.github.mikephil.charting.components.Legend
 import com.github.mikephil.charting.components.LimitLine
 import com.github.mikephil.charting.data.Entry
 import com.github.mikephil.charting.data.LineData
 import com.github.mikephil.charting.data.LineDataSet
-import com.github.mikephil.charting.formatter.IndexAxisValueFormatter
-import com.github.mikephil.charting.interfaces.datasets.ILineDataSet
-import okhttp3.*
-import org.json.JSONObject
-import java.io.IOException
-import java.time.OffsetDateTime
-import java.time.format.DateTimeFormatter
-import kotlin.math.ceil
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 import kotlin.math.max
 import kotlin.math.min
 import kotlin.math.roundToInt
-import kotlin.math.roundToLong
 
 class SensorFragment : Fragment() {
 
     /* ---------- UI ---------- */
     private lateinit var chart: LineChart
+    private lateinit var lod: ChartLod                      // pixel-width decimation on zoom/pan
     private lateinit var sensorLayout: LinearLayout         // container for equally‐weighted Buttons
     private lateinit var hideNightBox: CheckBox
     private lateinit var hideSepBox: CheckBox
@@ -51,13 +50,16 @@ class SensorFragment : Fragment() {
     private lateinit var bridgeBox: CheckBox
     private lateinit var trendBox: CheckBox
     private lateinit var predictionTxt: TextView
+    private lateinit var rollingTxt: TextView
 
     /* ---------- prefs / raw data ---------- */
     private lateinit var prefs: SharedPreferences
-    private var dataList: List<JSONObject> = emptyList()
+    private val series: SensorSeries              // the shared, immutable snapshot
+        get() = SensorLogRepository.series.value
 
     /* ---------- static meta ---------- */
     private lateinit var sensorKeys: List<String>   // e.g. "sensor_u0" … "sensor_uN"
+    private lateinit var channels: IntArray         // column of each sensorKey in the store
     private lateinit var sensorLabels: List<String> // "All", "1", "2", …
     private lateinit var dryVals: List<Float>
     private lateinit var wetVals: List<Float>
@@ -70,19 +72,60 @@ class SensorFragment : Fragment() {
         android.graphics.Color.MAGENTA
     )
 
-    /* ---------- selection state ---------- */
-    private var selectedSensorIndex = 0   // 0 = "All", 1 = "1", etc.
-    private val sensorButtons = mutableListOf<Button>()
+    /* ---------- chart model ---------- */
+
+    /** Toggle and threshold state captured on the main thread for one redraw */
+    private class DrawOptions(
+        val channels: IntArray,
+        val dryVals: List<Float>,
+        val wetVals: List<Float>,
+        val selected: Int,
+        val hideNight: Boolean,
+        val hideSep: Boolean,
+        val viewMode: Int,
+        val bridge: Boolean,
+        val showTrend: Boolean,
+        /** Chart width, for picking the [ChartTier] */
+        val pixels: Int
+    )
 
-    /* ---------- polling ---------- */
-    private val handler = Handler(Looper.getMainLooper())
-    private val refresher = object : Runnable {
-        override fun run() {
-            fetch()
-            handler.postDelayed(this, 60_000L)
+    /**
+     * What is on the chart, built off the main thread and afterwards owned by
+     * it: [feed] keeps extending [sets] (one per plotted plant, null while a
+     * plant has no data) as polls bring in new rows.
+     */
+    private class ChartModel(
+        val opts: DrawOptions,
+        val feed: ChartFeed,
+        val sets: List<LineDataSet?>,
+        val separators: List<LimitLine>,
+        val bands: List<LimitLine>
+    ) {
+        var shownSeparators = 0
+        var yMin = Float.POSITIVE_INFINITY
+        var yMax = Float.NEGATIVE_INFINITY
+        var forecast: DryForecast? = null
+        var rolling: List<RollingStats> = emptyList()
+        val trendSets = mutableListOf<LineDataSet>()
+
+        /** Track the value range of a single plant */
+        fun absorb(batch: ChartFeed.Batch) {
+            if (opts.selected == 0) return
+            for (e in batch.entries[0]) {
+                if (e.y < yMin) yMin = e.y
+                if (e.y > yMax) yMax = e.y
+            }
         }
     }
 
+    private var redrawJob: Job? = null
+    private var analyticsJob: Job? = null
+    private var model: ChartModel? = null
+
+    /* ---------- selection state ---------- */
+    private var selectedSensorIndex = 0   // 0 = "All", 1 = "1", etc.
+    private val sensorButtons = mutableListOf<Button>()
+
     /* ==================== */
     /*  Companion factory   */
     /* ==================== */
@@ -146,6 +189,7 @@ class SensorFragment : Fragment() {
         /* ---- bind views ---- */
         prefs         = PreferenceManager.getDefaultSharedPreferences(requireContext())
         chart         = view.findViewById(R.id.lineChart)
+        lod           = ChartLod(chart)
         sensorLayout  = view.findViewById(R.id.sensorLayout)      // NEW: equal‐width button container
         hideNightBox  = view.findViewById(R.id.hideNightCheckBox)
         hideSepBox    = view.findViewById(R.id.hideSeparatorCheckBox)
@@ -156,10 +200,12 @@ class SensorFragment : Fragment() {
         bridgeBox     = view.findViewById(R.id.bridgeGapsCheckBox)
         trendBox      = view.findViewById(R.id.trendLineCheckBox)
         predictionTxt = view.findViewById(R.id.trendPredictionText)
+        rollingTxt    = view.findViewById(R.id.rollingStatsText)
 
         /* ---- sensor meta from prefs ---- */
         val plants = prefs.getInt("plantCount", 4)
         sensorKeys   = List(plants) { i -> "sensor_u${i}" }
+        channels     = IntArray(plants) { i -> SensorChannels.moisture(i) }
         // Display simple numeric labels instead of "Plant N" for the selector
         sensorLabels = listOf("All") + List(plants) { i -> "${i + 1}" }
         dryVals      = List(plants) { i -> prefs.getFloat("plant_${i + 1}_dry", 400f) }
@@ -254,393 +300,302 @@ class SensorFragment : Fragment() {
         bridgeBox.setOnCheckedChangeListener(listener)
         trendBox.setOnCheckedChangeListener(listener)
 
-        /* initial fetch + start polling */
-        fetch()
-        handler.post(refresher)
-    }
-
-    override fun onDestroyView() {
-        super.onDestroyView()
-        handler.removeCallbacks(refresher)
-    }
+        /* append to (or redraw) the chart whenever the shared log changes */
+        viewLifecycleOwner.lifecycleScope.launch {
+            viewLifecycleOwner.repeatOnLifecycle(Lifecycle.State.STARTED) {
+                SensorLogRepository.series.collect { onSeries(it) }
+            }
+        }
 
-    /* ============================ */
-    /*  Network: fetch entire data  */
-    /* ============================ */
-    private fun fetch() {
-        OkHttpClient().newCall(
-            Request.Builder()
-                .url("https://g2f12813f9dfc61-garden.adb.eu-paris-1.oraclecloudapps.com/ords/admin/log/log")
-                .build()
-        ).enqueue(object : Callback {
-            override fun onFailure(call: Call, e: IOException) { /* ignore */ }
-            override fun onResponse(call: Call, response: Response) {
-                response.body?.string()?.let {
-                    val arr = JSONObject(it).getJSONArray("items")
-                    dataList = List(arr.length()) { i -> arr.getJSONObject(i) }
-                    activity?.runOnUiThread {
-                        if (isAdded) redraw()
-                    }
-                }
+        /* keep the log polled while this screen is visible */
+        viewLifecycleOwner.lifecycleScope.launch {
+            viewLifecycleOwner.repeatOnLifecycle(Lifecycle.State.STARTED) {
+                PollScheduler.whileVisible(requireContext())
             }
-        })
+        }
     }
 
     /* =============================================================== */
     /*  MAIN DRAW function                                              */
-    /*  (same logic as before, except using selectedSensorIndex…)       */
+    /*  Toggles are read here; the chart model is built on a worker     */
+    /*  thread and only the final swap runs on the main thread. A newer */
+    /*  redraw cancels any model still being built.                     */
     /* =============================================================== */
-    private fun redraw() {
-        if (dataList.isEmpty()) return
+    private fun redraw(animate: Boolean = true) {
+        model = null
+        if (series.isEmpty()) return
 
         /* ---- read toggles ---- */
-        val hideNight   = hideNightBox.isChecked
-        val hideSep     = hideSepBox.isChecked
         val viewMode = when {
             range24hRadio.isChecked -> MODE_24H
             rangeLastDipRadio.isChecked -> MODE_LAST_DIP
             else -> MODE_ALL
         }
-        val bridge      = bridgeBox.isChecked
-        // only show trend if a single plant is chosen (i.e. selectedSensorIndex ≠ 0)
-        val showTrend   = trendBox.isChecked && selectedSensorIndex != 0
-
-        /* ---- helpers ---- */
-        val now    = OffsetDateTime.now().plusHours(2)
-        val cutoff = when (viewMode) {
-            MODE_24H -> now.minusHours(24)
-            MODE_LAST_DIP -> computeLastDipCutoff()
-            else -> null
+        val opts = DrawOptions(
+            channels  = channels,
+            dryVals   = dryVals,
+            wetVals   = wetVals,
+            selected  = selectedSensorIndex,
+            hideNight = hideNightBox.isChecked,
+            hideSep   = hideSepBox.isChecked,
+            viewMode  = viewMode,
+            bridge    = bridgeBox.isChecked,
+            // only show trend if a single plant is chosen (i.e. selectedSensorIndex ≠ 0)
+            showTrend = trendBox.isChecked && selectedSensorIndex != 0,
+            pixels    = chart.width.takeIf { it > 0 } ?: resources.displayMetrics.widthPixels
+        )
+        val snapshot = series
+
+        redrawJob?.cancel()
+        redrawJob = viewLifecycleOwner.lifecycleScope.launch {
+            val built = withContext(Dispatchers.Default) { buildModel(snapshot, opts) }
+                ?: return@launch
+            showModel(built, animate)
         }
-        val tFmt   = DateTimeFormatter.ofPattern("HH:mm")
-        val dFmt   = DateTimeFormatter.ofPattern("dd MMM")
+    }
 
+    /**
+     * A new snapshot of the log arrived: append its new rows to the chart on
+     * screen, or rebuild it when that is not possible — while a build is
+     * pending, in the 24 h / last-dip views whose window moves with the clock
+     * and the data, when the history has grown enough for a coarser
+     * [ChartTier], or when a plant without data so far needs a dataset.
+     */
+    private fun onSeries(s: SensorSeries) {
+        val m = model
+        if (m == null || m.opts.viewMode != MODE_ALL || !m.feed.canFeed(s) ||
+            tierFor(s, Long.MIN_VALUE, m.opts) != m.feed.tier
+        ) {
+            redraw(animate = chart.data == null)
+            return
+        }
+
+        val batch = m.feed.feed(s)
+        if (m.sets.indices.any { m.sets[it] == null && batch.entries[it].isNotEmpty() }) {
+            redraw(animate = false)
+            return
+        }
+        m.sets.forEachIndexed { i, set ->
+            if (set != null) lod.append(set, batch.entries[i], batch.replace[i])
+        }
+        m.absorb(batch)
+
+        val xAxis = chart.xAxis
+        for (k in m.shownSeparators until m.separators.size) xAxis.addLimitLine(m.separators[k])
+        m.shownSeparators = m.separators.size
+        applyRange(m)
+        lod.update()
+
+        /* catching the trackers up may replay the history for a new threshold:
+           do it off the main thread and show only the result */
+        analyticsJob?.cancel()
+        analyticsJob = viewLifecycleOwner.lifecycleScope.launch {
+            val (forecast, rolling) = withContext(Dispatchers.Default) {
+                (if (m.opts.showTrend) forecastFor(s, m.opts) else null) to rollingFor(s, m.opts)
+            }
+            if (model !== m) return@launch
+            m.forecast = forecast
+            m.rolling = rolling
+            showTrend(m)
+            showRolling(m)
+        }
+    }
+
+    /** Swap a finished [m] into the chart (main thread) */
+    private fun showModel(m: ChartModel, animate: Boolean) {
         val xAxis = chart.xAxis
         val yAxis = chart.axisLeft
         xAxis.removeAllLimitLines()
         yAxis.removeAllLimitLines()
-        predictionTxt.text = ""
 
-        /* ============================================================ */
-        /*  A) “All Sensors” (index 0)                                  */
-        /* ============================================================ */
-        if (selectedSensorIndex == 0) {
-            chart.fitScreen()
+        if (m.opts.selected == 0) {
+            if (animate) chart.fitScreen()
             chart.setAutoScaleMinMaxEnabled(true)
             yAxis.resetAxisMinimum()
             yAxis.resetAxisMaximum()
+            chart.legend.apply { isEnabled = true; form = Legend.LegendForm.LINE }
+        } else {
+            chart.legend.isEnabled = false
+        }
+        m.separators.forEach(xAxis::addLimitLine)
+        m.shownSeparators = m.separators.size
+        m.bands.forEach(yAxis::addLimitLine)
+
+        val sets = m.sets.filterNotNull()
+        chart.data = LineData(sets)
+        lod.bind(sets)
+        applyRange(m)
+        showTrend(m)
+        showRolling(m)
+        xAxis.valueFormatter = m.feed.timeline.formatter()
+        model = m
+        finishChart(animate)
+    }
 
-            /* gather per-sensor time/value pairs */
-            val perSensor = sensorKeys.associateWith { mutableListOf<Pair<OffsetDateTime, Float>>() }
-            dataList.forEach { obj ->
-                val ts = OffsetDateTime.parse(obj.getString("created_at")).plusHours(2)
-                if (cutoff != null && ts.isBefore(cutoff)) return@forEach
-                if (hideNight && ts.hour < 6) return@forEach
-                sensorKeys.forEach { k ->
-                    val v = obj.optInt(k, -1)
-                    if (v >= 0) perSensor[k]?.add(ts to v.toFloat())
+    /**
+     * Build the chart model for [series] under [o]. Runs off the main thread
+     * and must not touch views; returns null if there is nothing to draw.
+     */
+    private fun CoroutineScope.buildModel(series: SensorSeries, o: DrawOptions): ChartModel? {
+        /* ---- helpers (all times are epoch seconds) ---- */
+        val clock  = LocalClock()
+        val now    = System.currentTimeMillis() / 1000
+        val cutoff = when (o.viewMode) {
+            MODE_24H -> now - 24 * 3600L
+            MODE_LAST_DIP -> computeLastDipCutoff(series, o)
+            else -> Long.MIN_VALUE
+        }
+
+        /* ---- A) “All Sensors” plots every plant, B) a single plant ---- */
+        val plants = if (o.selected == 0) o.channels.indices.toList() else listOf(o.selected - 1)
+        val chans = IntArray(plants.size) { o.channels[plants[it]] }
+
+        /* ---- walk rows (10-min slots when bridging, hourly / daily means
+                when those still fill the chart) → entries ---- */
+        val tier = tierFor(series, cutoff, o)
+        val separators = mutableListOf<LimitLine>()
+        val timeline =
+            ChartTimeline(clock, if (o.hideSep || tier == ChartTier.DAILY) null else separators)
+        val feed = ChartFeed(chans, tier, false, cutoff, o.hideNight, { it >= 0 }, timeline)
+        val batch = feed.feed(series) { ensureActive() }
+
+        val sets = plants.mapIndexed { i, idx ->
+            batch.entries[i].takeIf { it.isNotEmpty() }?.let { es ->
+                LineDataSet(es, sensorLabels[idx + 1]).apply {
+                    lineWidth = 2f
+                    setDrawCircles(false)
+                    setDrawValues(false)
+                    color = colours.getOrElse(idx) { android.graphics.Color.BLACK }
                 }
             }
+        }
+        if (sets.all { it == null }) return null
+        ensureActive()
+
+        /* ---- wet / dry bands and dry-hit forecast for a single plant ---- */
+        val single = o.selected != 0
+        val bands = if (!single) emptyList() else listOf(
+            LimitLine(o.dryVals[plants[0]], "Dry"),
+            LimitLine(o.wetVals[plants[0]], "Wet")
+        )
+
+        return ChartModel(o, feed, sets, separators, bands).apply {
+            absorb(batch)
+            if (o.showTrend) forecast = forecastFor(series, o)
+            rolling = rollingFor(series, o)
+        }
+    }
 
-            if (!bridge) {
-                /* no bridging → irregular spacing */
-                val labels = mutableListOf<String>()
-                val rawIdx = mutableListOf<Int>()
-                var lastDay: java.time.LocalDate? = null
-
-                dataList.forEachIndexed { i, obj ->
-                    val ts = OffsetDateTime.parse(obj.getString("created_at")).plusHours(2)
-                    if (cutoff != null && ts.isBefore(cutoff)) return@forEachIndexed
-                    if (hideNight && ts.hour < 6) return@forEachIndexed
-
-                    if (!hideSep && ts.toLocalDate() != lastDay) {
-                        xAxis.addLimitLine(
-                            LimitLine(
-                                labels.size.toFloat(),
-                                ts.toLocalDate().format(dFmt)
-                            )
-                        )
-                        lastDay = ts.toLocalDate()
-                    }
-                    labels += ts.format(tFmt)
-                    rawIdx += i
-                }
+    /** Resolution to plot [series] from [cutoff] on at */
+    private fun tierFor(series: SensorSeries, cutoff: Long, o: DrawOptions): ChartTier =
+        ChartTier.pick(series, cutoff, o.pixels, if (o.bridge) ChartTier.SLOTS else ChartTier.ROWS)
 
-                val sets = mutableListOf<ILineDataSet>()
-                sensorKeys.forEachIndexed { idx, key ->
-                    val es = rawIdx.mapIndexedNotNull { pos, r ->
-                        dataList[r].optInt(key, -1)
-                            .takeIf { it >= 0 }
-                            ?.let { Entry(pos.toFloat(), it.toFloat()) }
-                    }
-                    if (es.isNotEmpty()) {
-                        sets += LineDataSet(es, sensorLabels[idx + 1]).apply {
-                            lineWidth = 2f
-                            setDrawCircles(false)
-                            setDrawValues(false)
-                            color = colours.getOrElse(idx) { android.graphics.Color.BLACK }
-                        }
-                    }
-                }
+    /** The shared dry-hit forecast of the selected plant */
+    private fun forecastFor(series: SensorSeries, o: DrawOptions): DryForecast? {
+        val idx = o.selected - 1
+        return ForecastIndex.forecast(series, idx, o.wetVals[idx], o.dryVals[idx])
+    }
 
-                chart.legend.apply { isEnabled = true; form = Legend.LegendForm.LINE }
-                chart.data = LineData(sets)
-                xAxis.valueFormatter = IndexAxisValueFormatter(labels)
-                finishChart()
-                return
-            }
+    /** Rolling stats of the selected plant's raw reading; none for "All" */
+    private fun rollingFor(series: SensorSeries, o: DrawOptions): List<RollingStats> =
+        if (o.selected == 0) emptyList()
+        else RollingIndex.stats(series, o.channels[o.selected - 1])
 
-            /* ============================================================ */
-            /*  bridging ON → 10-min raster, only real points              */
-            /* ============================================================ */
-            val slotsAll = perSensor.values.flatten()
-                .map {
-                    it.first
-                        .withMinute(it.first.minute / 10 * 10)
-                        .withSecond(0)
-                        .withNano(0)
-                }
-            if (slotsAll.isEmpty()) return
-
-            var slot = slotsAll.minOrNull()!!
-            val lastSlot = slotsAll.maxOrNull()!!
-            val slotList = mutableListOf<OffsetDateTime>()
-            var pos = 0
-            var lastDay: java.time.LocalDate? = null
-
-            while (!slot.isAfter(lastSlot)) {
-                val keep = !(hideNight && slot.hour < 6) &&
-                        !(cutoff != null && slot.isBefore(cutoff))
-                if (keep) {
-                    if (!hideSep && slot.toLocalDate() != lastDay) {
-                        xAxis.addLimitLine(
-                            LimitLine(
-                                pos.toFloat(),
-                                slot.toLocalDate().format(dFmt)
-                            )
-                        )
-                        lastDay = slot.toLocalDate()
-                    }
-                    slotList += slot
-                    pos++
-                }
-                slot = slot.plusMinutes(10)
-            }
+    /** "1 h: min–max (mean ± sd) · 24 h: … · 7 d: …" under the chart */
+    private fun showRolling(m: ChartModel) {
+        rollingTxt.text = m.rolling.joinToString("  ·  ") { "${it.label}: ${it.describe()}" }
+    }
 
-            val dataSets = mutableListOf<ILineDataSet>()
-            sensorKeys.forEachIndexed { idx, key ->
-                val map = perSensor[key]!!.associateBy(
-                    { it.first.withMinute(it.first.minute / 10 * 10).withSecond(0).withNano(0) },
-                    { it.second }
-                )
-                val es = mutableListOf<Entry>()
-                slotList.forEachIndexed { p, s ->
-                    map[s]?.let { es += Entry(p.toFloat(), it) }
-                }
-                if (es.isNotEmpty()) {
-                    dataSets += LineDataSet(es, sensorLabels[idx + 1]).apply {
-                        lineWidth = 2f
-                        setDrawCircles(false)
-                        setDrawValues(false)
-                        color = colours.getOrElse(idx) { android.graphics.Color.BLACK }
-                    }
-                }
-            }
+    /** Fit the y axis of a single-plant chart around its data and wet / dry bands */
+    private fun applyRange(m: ChartModel) {
+        if (m.opts.selected == 0) return
+        val wet = m.opts.wetVals[m.opts.selected - 1]
+        val dry = m.opts.dryVals[m.opts.selected - 1]
+        val span = max(wet, dry) - min(wet, dry)
+        chart.axisLeft.axisMinimum = min(m.yMin, min(wet, dry) - span)
+        chart.axisLeft.axisMaximum = max(m.yMax, max(wet, dry) + span)
+    }
 
-            chart.legend.apply { isEnabled = true; form = Legend.LegendForm.LINE }
-            chart.data = LineData(dataSets)
-            xAxis.valueFormatter = IndexAxisValueFormatter(slotList.map { it.format(tFmt) })
-            finishChart()
-            return
-        }
+    /**
+     * (Re)draw the forecast: a dashed drying line from the last watering to the
+     * dry crossing, the confidence band along the dry line, and the prediction
+     * text. Positions past the newest one are steps of the feed's [ChartTier].
+     */
+    private fun showTrend(m: ChartModel) {
+        val data = chart.data ?: return
+        m.trendSets.forEach { data.removeDataSet(it) }
+        m.trendSets.clear()
+        predictionTxt.text = ""
 
-        /* ============================================================ */
-        /*  B) SINGLE PLANT (index ≥ 1)                                 */
-        /* ============================================================ */
-        val idx = selectedSensorIndex - 1
-        val key = sensorKeys[idx]
-        val wet = wetVals[idx]
-        val dry = dryVals[idx]
-
-        val raw = dataList.mapNotNull { obj ->
-            val ts = OffsetDateTime.parse(obj.getString("created_at")).plusHours(2)
-            if (cutoff != null && ts.isBefore(cutoff)) return@mapNotNull null
-            if (hideNight && ts.hour < 6) return@mapNotNull null
-            val v = obj.optInt(key, -1).takeIf { it >= 0 } ?: return@mapNotNull null
-            ts to v.toFloat()
-        }.sortedBy { it.first }
-        if (raw.isEmpty()) return
-
-        val labels = mutableListOf<String>()
-        val entries = mutableListOf<Entry>()
-        var lastDay: java.time.LocalDate? = null
-
-        if (bridge) {
-            val slotMap = mutableMapOf<OffsetDateTime, Float>()
-            raw.forEach { (ts, v) ->
-                val s = ts.withMinute(ts.minute / 10 * 10).withSecond(0).withNano(0)
-                slotMap[s] = v
-            }
-            var slot = slotMap.keys.minOrNull()!!
-            val last = slotMap.keys.maxOrNull()!!
-            var pos = 0
-            while (!slot.isAfter(last)) {
-                val keep = !(hideNight && slot.hour < 6) &&
-                        !(cutoff != null && slot.isBefore(cutoff))
-                if (keep) {
-                    if (!hideSep && slot.toLocalDate() != lastDay) {
-                        xAxis.addLimitLine(
-                            LimitLine(
-                                pos.toFloat(),
-                                slot.toLocalDate().format(dFmt)
-                            )
-                        )
-                        lastDay = slot.toLocalDate()
-                    }
-                    labels += slot.format(tFmt)
-                    slotMap[slot]?.let { entries += Entry(pos.toFloat(), it) }
-                    pos++
-                }
-                slot = slot.plusMinutes(10)
+        val f = m.forecast ?: return
+        val timeline = m.feed.timeline
+        if (timeline.count == 0) return
+        val dry = m.opts.dryVals[m.opts.selected - 1]
+        val lastX = timeline.count - 1
+        val lastEpoch = timeline.epochAt(lastX)
+        fun x(epoch: Long) =
+            if (epoch > lastEpoch) lastX + (epoch - lastEpoch) / m.feed.tier.seconds.toFloat()
+            else timeline.positionAt(epoch).coerceAtMost(lastX).toFloat()
+
+        fun line(entries: List<Entry>, label: String, width: Float) =
+            LineDataSet(entries, label).apply {
+                lineWidth = width
+                setDrawCircles(false)
+                setDrawValues(false)
+                enableDashedLine(10f, 5f, 0f)
+                color = android.graphics.Color.GRAY
             }
-        } else {
-            var pos = 0
-            raw.forEach { (ts, v) ->
-                if (!hideSep && ts.toLocalDate() != lastDay) {
-                    xAxis.addLimitLine(
-                        LimitLine(
-                            pos.toFloat(),
-                            ts.toLocalDate().format(dFmt)
-                        )
-                    )
-                    lastDay = ts.toLocalDate()
-                }
-                labels += ts.format(tFmt)
-                entries += Entry(pos.toFloat(), v)
-                pos++
-            }
-        }
 
-        val dataSets = mutableListOf<ILineDataSet>()
-        dataSets += LineDataSet(entries, sensorLabels[idx + 1]).apply {
-            lineWidth = 2f
-            setDrawCircles(false)
-            setDrawValues(false)
-            color = colours.getOrElse(idx) { android.graphics.Color.BLACK }
-        }
-
-        /* wet / dry bands */
-        chart.axisLeft.addLimitLine(LimitLine(dry, "Dry"))
-        chart.axisLeft.addLimitLine(LimitLine(wet, "Wet"))
-        val span = max(wet, dry) - min(wet, dry)
-        chart.axisLeft.axisMinimum = min(entries.minOf { it.y }, min(wet, dry) - span)
-        chart.axisLeft.axisMaximum = max(entries.maxOf { it.y }, max(wet, dry) + span)
-
-        /* Trend‐to‐dry line */
-        if (trendBox.isChecked && selectedSensorIndex != 0 && entries.size >= 2) {
-            val stableCount = 3
-            var sIdx = entries.indexOfFirst { it.y <= wet }.let { if (it == -1) 0 else it }
-            for (i in 1 until entries.size - stableCount) {
-                if (entries[i - 1].y > wet &&
-                    (0 until stableCount).all { j -> entries[i + j].y <= wet }) {
-                    sIdx = i
-                    break
-                }
-            }
-            val start = entries[sIdx]
-            val end = entries.last()
-            val dx = end.x - start.x
-            val dy = end.y - start.y
-            val slope = if (dx != 0f) dy / dx else 0f
-            if (slope > 0 && end.y < dry) {
-                val slotsToDry = (dry - end.y) / slope
-                val predX = end.x + slotsToDry
-                dataSets += LineDataSet(
-                    listOf(Entry(start.x, start.y), Entry(predX, dry)), "Trend"
-                ).apply {
-                    lineWidth = 1.5f
-                    setDrawCircles(false)
-                    setDrawValues(false)
-                    enableDashedLine(10f, 5f, 0f)
-                    color = android.graphics.Color.GRAY
-                }
-                repeat(ceil(predX - (labels.size - 1)).toInt()) { labels += "" }
-                val mins = (slotsToDry * 10).roundToLong()
-                val predicted = raw.last().first.plusMinutes(mins)
-                predictionTxt.text =
-                    "Expected dry hit: ${predicted.format(DateTimeFormatter.ofPattern("dd MMM HH:mm"))}"
-            }
+        m.trendSets += line(
+            listOf(Entry(x(f.originEpoch), f.originValue), Entry(x(f.dryEpoch), dry)), "Trend", 1.5f
+        )
+        f.latest?.let { late ->
+            m.trendSets += line(listOf(Entry(x(f.earliest), dry), Entry(x(late), dry)), "Band", 4f)
         }
+        m.trendSets.forEach { data.addDataSet(it) }
 
-        chart.legend.isEnabled = false
-        chart.data = LineData(dataSets)
-        xAxis.valueFormatter = IndexAxisValueFormatter(labels)
-        finishChart()
+        val clock = LocalClock()
+        val band = f.latest?.let { "${clock.formatTime(f.earliest)}–${clock.formatTime(it)}" }
+            ?: "after ${clock.formatTime(f.earliest)}"
+        predictionTxt.text =
+            "Expected dry hit: ${clock.formatDate(f.dryEpoch)} ${clock.formatTime(f.dryEpoch)} ($band)"
     }
 
     /**
      * Determine the timestamp of the lowest point of the most recent dip below
      * the wet threshold within the last five days. The dip is considered to
      * start once values drop below `wet` for several consecutive readings and
-     * the returned timestamp corresponds to the minimum of that dip.
+     * the returned timestamp corresponds to the minimum of that dip. Dips are
+     * detected once on ingest per plant by [WateringIndex], so this is a lookup.
+     *
+     * @return epoch seconds of the dip minimum, or the five-day lookback
      */
-    private fun computeLastDipCutoff(): OffsetDateTime {
-        val now = OffsetDateTime.now().plusHours(2)
-        val lookback = now.minusDays(5)
-        val stable = 3
-
-        fun dipFor(entries: List<Pair<OffsetDateTime, Float>>, wet: Float): OffsetDateTime? {
-            if (entries.size <= stable) return null
-            for (i in entries.size - stable downTo 1) {
-                val before = entries[i - 1].second
-                if (before > wet && (0 until stable).all { j -> entries[i + j].second <= wet }) {
-                    var minIdx = i
-                    var minVal = entries[i].second
-                    var k = i
-                    while (k < entries.size && entries[k].second <= wet) {
-                        val v = entries[k].second
-                        if (v <= minVal) { minVal = v; minIdx = k }
-                        k++
-                    }
-                    return entries[minIdx].first
-                }
-            }
-            return null
-        }
+    private fun computeLastDipCutoff(series: SensorSeries, o: DrawOptions): Long {
+        val lookback = System.currentTimeMillis() / 1000 - 5 * 86_400L
+        fun dipFor(idx: Int) =
+            WateringIndex.last(series, idx, o.wetVals[idx], lookback)?.minEpoch
 
-        if (selectedSensorIndex == 0) {
+        if (o.selected == 0) {
             var latest = lookback
-            sensorKeys.forEachIndexed { idx, key ->
-                val entries = dataList.mapNotNull { obj ->
-                    val ts = OffsetDateTime.parse(obj.getString("created_at")).plusHours(2)
-                    if (ts.isBefore(lookback)) return@mapNotNull null
-                    val v = obj.optInt(key, -1).takeIf { it >= 0 } ?: return@mapNotNull null
-                    ts to v.toFloat()
-                }.sortedBy { it.first }
-                dipFor(entries, wetVals[idx])?.let { if (it.isAfter(latest)) latest = it }
+            o.channels.indices.forEach { idx ->
+                dipFor(idx)?.let { if (it > latest) latest = it }
             }
             return latest
         } else {
-            val key = sensorKeys[selectedSensorIndex - 1]
-            val entries = dataList.mapNotNull { obj ->
-                val ts = OffsetDateTime.parse(obj.getString("created_at")).plusHours(2)
-                if (ts.isBefore(lookback)) return@mapNotNull null
-                val v = obj.optInt(key, -1).takeIf { it >= 0 } ?: return@mapNotNull null
-                ts to v.toFloat()
-            }.sortedBy { it.first }
-            return dipFor(entries, wetVals[selectedSensorIndex - 1]) ?: lookback
+            return dipFor(o.selected - 1) ?: lookback
         }
     }
 
     /* =========================================================== */
     /*  misc                                                      */
     /* =========================================================== */
-    private fun finishChart() {
+
+    private fun finishChart(animate: Boolean) {
         chart.axisRight.isEnabled = false
         chart.setTouchEnabled(true)
         chart.setPinchZoom(true)
         chart.description.isEnabled = false
-        chart.animateX(600)
+        if (animate) chart.animateX(600)
         chart.invalidate()
     }
 
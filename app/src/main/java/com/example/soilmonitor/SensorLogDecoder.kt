@@ -0,0 +1,113 @@
+package com.example.soilmonitor
+
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import okio.BufferedSource
+
+/**
+ * Streaming decoder for the ORDS `log` response.
+ *
+ * Reads the body token by token and writes `created_at` plus the known sensor
+ * fields of every item straight into a [SensorStore]; nothing but the current
+ * row is held in memory, so peak usage does not grow with the payload.
+ */
+object SensorLogDecoder {
+
+    /** Outcome of decoding one ORDS page */
+    class Page(
+        /** rows appended to the store */
+        val rows: Int,
+        /** href of the `next` link if the server reported `hasMore` */
+        val next: String?
+    )
+
+    /**
+     * Append the items in [source] that are newer than [store]'s last row, at
+     * most [maxRows] of them; the rest of the page is read and dropped.
+     * Columns missing from the response (e.g. projected away) stay NaN.
+     */
+    fun decode(source: BufferedSource, store: SensorStore, maxRows: Int = Int.MAX_VALUE): Page {
+        val before = store.size
+        val row = FloatArray(SensorChannels.COUNT)
+        val timestamps = IsoTimestamps()
+        var hasMore = false
+        var next: String? = null
+
+        JsonReader(source.inputStream().reader(Charsets.UTF_8)).use { reader ->
+            reader.beginObject()
+            while (reader.hasNext()) {
+                when (reader.nextName()) {
+                    "hasMore" -> { hasMore = reader.nextBoolean(); continue }
+                    "links" -> { next = readNextLink(reader); continue }
+                    "items" -> Unit
+                    else -> { reader.skipValue(); continue }
+                }
+                reader.beginArray()
+                while (reader.hasNext()) {
+                    val epoch = readItem(reader, row, timestamps)
+                    if (epoch != Long.MIN_VALUE && epoch > store.lastEpoch &&
+                        store.size - before < maxRows
+                    ) {
+                        store.append(epoch, row)
+                    }
+                }
+                reader.endArray()
+            }
+            reader.endObject()
+        }
+        return Page(store.size - before, if (hasMore) next else null)
+    }
+
+    /** Return the href of the `rel: "next"` entry of an ORDS `links` array */
+    private fun readNextLink(reader: JsonReader): String? {
+        var next: String? = null
+        reader.beginArray()
+        while (reader.hasNext()) {
+            var rel: String? = null
+            var href: String? = null
+            reader.beginObject()
+            while (reader.hasNext()) {
+                when (reader.nextName()) {
+                    "rel" -> rel = reader.nextString()
+                    "href" -> href = reader.nextString()
+                    else -> reader.skipValue()
+                }
+            }
+            reader.endObject()
+            if (rel == "next") next = href
+        }
+        reader.endArray()
+        return next
+    }
+
+    /**
+     * Read one item object into [row].
+     *
+     * @return its epoch second, or [Long.MIN_VALUE] if it had no `created_at`
+     */
+    private fun readItem(reader: JsonReader, row: FloatArray, timestamps: IsoTimestamps): Long {
+        row.fill(Float.NaN)
+        var epoch = Long.MIN_VALUE
+
+        reader.beginObject()
+        while (reader.hasNext()) {
+            val name = reader.nextName()
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull()
+                continue
+            }
+            if (name == "created_at") {
+                epoch = timestamps.parseEpochSecond(reader.nextString())
+                continue
+            }
+            val channel = SensorChannels.KEYS.indexOf(name)
+            if (channel < 0) {
+                reader.skipValue()
+                continue
+            }
+            row[channel] = reader.nextDouble().toFloat()
+        }
+        reader.endObject()
+        return epoch
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.soilmonitor
+
+import android.content.Context
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import okhttp3.HttpUrl.Companion.toHttpUrl
+import java.io.File
+import java.io.IOException
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Process-wide owner of the sensor log.
+ *
+ * Every screen and the background worker read the same in-memory history
+ * from [series], a [StateFlow] of immutable [SensorSeries] snapshots: each
+ * ingest publishes a new version that shares the store's arrays, so readers
+ * on any thread neither copy nor lock. A refresh only asks the server for
+ * rows newer than the last `created_at` we have already merged, so after the
+ * first download each poll transfers just the handful of readings logged
+ * since the previous one. Callers that need only a slice (e.g. the newest
+ * row) use [fetch], which pushes range and limit down to ORDS. Where the
+ * server offers it, [awaitRows] long-polls for new rows instead (see
+ * [LiveFeed]).
+ *
+ * Once [attach]ed, the history is also kept in a [SensorDiskCache], so a cold
+ * start publishes the cached rows before any network round-trip. Every
+ * ingest also catches up the persistent [WateringIndex] and [ForecastIndex].
+ */
+object SensorLogRepository {
+
+    const val LOG_URL =
+        "https://g2f12813f9dfc61-garden.adb.eu-paris-1.oraclecloudapps.com/ords/admin/log/log"
+    /** Long-poll endpoint for [awaitRows]; see [LongPollClient] */
+    const val WAIT_URL =
+        "https://g2f12813f9dfc61-garden.adb.eu-paris-1.oraclecloudapps.com/ords/admin/log/wait"
+    private const val CACHE_FILE = "sensor_log.bin"
+    private const val WATERING_FILE = "watering_index.bin"
+    private const val FORECAST_FILE = "forecast_index.bin"
+
+    /** Built on first use, so [attach] has given [HttpStack] its disk cache by then */
+    private val ords by lazy { OrdsLogClient(HttpStack.client, LOG_URL.toHttpUrl()) }
+    private val live by lazy { LongPollClient(HttpStack.client, WAIT_URL.toHttpUrl()) }
+
+    /**
+     * Cache load, every sync of the shared history and the disk writes that
+     * follow a publish run here, one at a time
+     */
+    private val io = Executors.newSingleThreadExecutor()
+
+    /* ---- merged history, oldest first ---- */
+    private val store = SensorStore()
+    private val _series = MutableStateFlow(SensorSeries.EMPTY)
+    val series: StateFlow<SensorSeries> = _series
+
+    /* ---- incremental sync state ---- */
+    private val lock = Any()
+    private val cache = AtomicReference<SensorDiskCache?>()
+    private var cacheLoaded = false
+    private var persisted = 0                   // rows in the disk cache; io thread after loadCache
+
+    /**
+     * Bind the on-disk cache and start loading it in the background.
+     * Safe to call repeatedly; only the first call has an effect.
+     */
+    fun attach(context: Context) {
+        val dir = context.applicationContext.filesDir
+        HttpStack.attach(context)
+        if (!cache.compareAndSet(null, SensorDiskCache(File(dir, CACHE_FILE)))) return
+        WateringIndex.attach(File(dir, WATERING_FILE))
+        ForecastIndex.attach(File(dir, FORECAST_FILE))
+        io.execute(::loadCache)
+    }
+
+    /**
+     * [refreshBlocking] on the repository's I/O thread, then [done] with its
+     * result, still on that thread. Callers keep at most one refresh queued
+     * (see [PollScheduler]).
+     */
+    fun refresh(done: (Boolean) -> Unit) {
+        io.execute { done(syncNow()) }
+    }
+
+    /**
+     * Synchronous variant for callers that already run off the main thread
+     * (e.g. [MoistureCheckWorker]). The sync still runs on the repository's
+     * I/O thread, queued behind any other, so it never overlaps one.
+     *
+     * @return false if the server could not be reached or the caller was
+     *         interrupted while waiting
+     */
+    fun refreshBlocking(): Boolean =
+        try {
+            io.submit(Callable(::syncNow)).get()
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            false
+        } catch (e: ExecutionException) {
+            false
+        }
+
+    /**
+     * True if the shared history (with the disk cache loaded) already holds a
+     * row at or after [epoch], so a [refreshBlocking] only fetches what was
+     * logged since. Blocking; call off the main thread.
+     */
+    fun reaches(epoch: Long): Boolean {
+        loadCache()
+        return synchronized(lock) { store.lastEpoch >= epoch }
+    }
+
+    /**
+     * Wait (blocking, up to the long-poll timeout) for rows newer than the
+     * last merged one and publish them as soon as they arrive. The wait holds
+     * no lock, so syncs and the worker proceed meanwhile; rows they merged
+     * first are skipped. Driven by [LiveFeed].
+     *
+     * An empty history is first filled by a [refreshBlocking], queued behind
+     * the [PollScheduler]'s own first sync so the log is downloaded only once;
+     * no long-poll is made then.
+     *
+     * @return true if a long-poll completed (with or without rows), false if
+     *         the history was filled instead
+     * @throws IOException if the wait failed or was cancelled through [token],
+     *         or the history is still empty
+     */
+    fun awaitRows(token: WaitToken): Boolean {
+        loadCache()
+        val since = synchronized(lock) { store.lastEpoch }
+        if (since == Long.MIN_VALUE) {
+            if (!refreshBlocking() || series.value.isEmpty()) throw IOException("no history yet")
+            return false
+        }
+        val batch = SensorStore()
+        if (live.waitForRows(since, batch, token) > 0) merge(batch)
+        return true
+    }
+
+    /**
+     * One-off [query] that bypasses the shared history, e.g. just the newest
+     * row. Blocking; call off the main thread.
+     *
+     * @return the matching rows, or null if the server could not be reached
+     */
+    fun fetch(query: LogQuery): SensorSeries? {
+        val result = SensorStore()
+        return try {
+            ords.fetch(query, result)
+            result.snapshot()
+        } catch (e: IOException) {
+            null
+        }
+    }
+
+    /**
+     * [fetch] as a conditional request against [validators] saved from the
+     * previous call with the same [query], so an unchanged log costs a bodiless
+     * 304. Blocking; call off the main thread.
+     *
+     * @return the rows (null if unchanged) and the validators to save, or null
+     *         if the server could not be reached
+     */
+    fun fetchIfChanged(
+        query: LogQuery, validators: CacheValidators?
+    ): Pair<SensorSeries?, CacheValidators>? {
+        val result = SensorStore()
+        return try {
+            val fetch = ords.fetchIfChanged(query, result, validators)
+            (if (fetch.modified) result.snapshot() else null) to fetch.validators
+        } catch (e: IOException) {
+            null
+        }
+    }
+
+    /* ================================================================ */
+    /*  internals                                                       */
+    /* ================================================================ */
+
+    private fun loadCache() {
+        synchronized(lock) {
+            if (cacheLoaded) return
+            val c = cache.get() ?: return
+            cacheLoaded = true
+            WateringIndex.load()
+            ForecastIndex.load()
+            if (c.loadInto(store) > 0) {
+                val snapshot = store.snapshot()
+                _series.value = snapshot
+                persisted = snapshot.size
+                WateringIndex.ingest(snapshot)
+                ForecastIndex.ingest(snapshot)
+            }
+        }
+    }
+
+    /** [loadCache] and [sync]; io thread only */
+    private fun syncNow(): Boolean {
+        loadCache()
+        return sync()
+    }
+
+    /**
+     * Fetch every row newer than what we already hold and merge it into the
+     * store and the disk cache. The round-trip holds no lock, so readers of
+     * the store and a concurrent [awaitRows] are not held up by a slow server.
+     */
+    private fun sync(): Boolean {
+        val since = synchronized(lock) { store.lastEpoch }.takeIf { it != Long.MIN_VALUE }
+        val batch = SensorStore()
+        return try {
+            ords.fetch(LogQuery(since = since), batch)
+            true
+        } catch (e: IOException) {
+            false
+        } finally {
+            // merge whatever pages arrived, even if a later one failed
+            merge(batch)
+        }
+    }
+
+    /**
+     * Append the rows of [batch] newer than the store's last one and publish
+     * them. Rows merged meanwhile by a concurrent sync or wait are skipped, so
+     * neither produces duplicates. Only the append and the publish hold
+     * [lock]; the disk writes are queued on [io] behind it.
+     */
+    private fun merge(batch: SensorStore) {
+        if (batch.size == 0) return
+        val rows = batch.snapshot()
+        val r = rows.reader()
+        val values = FloatArray(SensorChannels.COUNT)
+        synchronized(lock) {
+            val before = store.size
+            for (i in 0 until rows.size) {
+                val epoch = r.epochAt(i)
+                if (epoch <= store.lastEpoch) continue
+                for (c in values.indices) values[c] = r.value(c, i)
+                store.append(epoch, values)
+            }
+            if (store.size == before) return
+            _series.value = store.snapshot()
+        }
+        io.execute(::persist)
+    }
+
+    /**
+     * Write the rows published since the last call to the disk cache and
+     * catch the saved indexes up with them. Reads the newest snapshot, so
+     * calls queued out of order or back to back just find less to do; io
+     * thread only.
+     */
+    private fun persist() {
+        val snapshot = _series.value
+        if (snapshot.size <= persisted) return
+        cache.get()?.append(snapshot, persisted, snapshot.size)
+        persisted = snapshot.size
+        WateringIndex.ingest(snapshot)
+        ForecastIndex.ingest(snapshot)
+    }
+}
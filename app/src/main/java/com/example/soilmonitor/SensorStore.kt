@@ -0,0 +1,189 @@
+package com.example.soilmonitor
+
+import java.time.ZoneId
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Column layout shared by [SensorStore] and [SensorSeries]: one float column
+ * per ORDS field, in this order.
+ */
+object SensorChannels {
+    val KEYS = listOf(
+        "sensor_u0", "sensor_u1", "sensor_u2", "sensor_u3", "sensor_u4",
+        "sensor_u5", "sensor_u6", "sensor_u7", "sensor_u8",
+        "sensor_temp", "sensor_hu", "sensor_co2",
+        "sensor_ph", "sensor_ppm", "sensor_tc"
+    )
+    val COUNT = KEYS.size
+
+    private val MOISTURE = BooleanArray(COUNT) { KEYS[it].startsWith("sensor_u") }
+
+    /** Column index of plant [plant] (0-based) */
+    fun moisture(plant: Int): Int = plant
+
+    /** Column index of an ORDS field name, e.g. "sensor_hu" */
+    fun of(key: String): Int = KEYS.indexOf(key).also {
+        require(it >= 0) { "unknown sensor column $key" }
+    }
+
+    /**
+     * Whether [v] is a real reading of [channel]: moisture sensors report
+     * negative values on error, the other channels NaN.
+     */
+    fun isValid(channel: Int, v: Float): Boolean =
+        if (MOISTURE[channel]) v >= 0 else !v.isNaN()
+}
+
+/**
+ * Append-only columnar store of the sensor log: an [EpochColumnBuilder] of
+ * epoch seconds and one [FloatColumnBuilder] per channel, NaN where a row had
+ * no value. Every full block of rows is Gorilla-compressed (delta-of-delta
+ * epochs, XOR floats), so a year of 10-minute history takes a fraction of its
+ * raw size; only the newest block stays raw.
+ *
+ * Sealing a block allocates a fresh raw block and leaves the old one
+ * untouched, and appends only write past the published size, so every
+ * [SensorSeries] handed out by [snapshot] is immutable and shares the
+ * store's arrays: publishing one costs O(channels), never a copy of the
+ * rows, and readers on any thread need no locks.
+ *
+ * Every append also updates the store's [SlotGrid], so the 10-minute raster
+ * used by the charts is never rebuilt from scratch, and a night bit in a
+ * [RowMask], so "hide night" never has to look at timestamps, and the hourly
+ * and daily [RollupBuilder]s, so long ranges can be drawn from one point per
+ * hour or day.
+ *
+ * Not thread-safe for writers; [SensorLogRepository] serialises appends.
+ */
+class SensorStore {
+
+    companion object {
+        private val lineages = AtomicLong()
+    }
+
+    /** Shared by every snapshot of this store; see [SensorSeries.lineage] */
+    private val lineage = lineages.incrementAndGet()
+    private val epochs = EpochColumnBuilder()
+    private val columns = Array(SensorChannels.COUNT) { FloatColumnBuilder() }
+    private val clock = LocalClock()
+    private val night = RowMaskBuilder()
+    private val grid = SlotGrid(clock)
+    private val hourly = RollupBuilder(clock) { Math.floorDiv(it, 3600L) }
+    private val daily = RollupBuilder(clock) { clock.day(it) }
+
+    var size = 0
+        private set
+
+    var lastEpoch = Long.MIN_VALUE
+        private set
+
+    /** Append one row; [values] is indexed like [SensorChannels.KEYS]. */
+    fun append(epoch: Long, values: FloatArray) {
+        epochs.add(epoch)
+        for (c in columns.indices) columns[c].add(values[c])
+        night.add(clock.isNight(epoch))
+        grid.add(epoch, values)
+        hourly.add(epoch, values)
+        daily.add(epoch, values)
+        lastEpoch = epoch
+        size++
+    }
+
+    fun snapshot(): SensorSeries = SensorSeries(
+        epochs.snapshot(), Array(columns.size) { columns[it].snapshot() }, size,
+        grid.snapshot(), hourly.snapshot(), daily.snapshot(), night.snapshot(), clock.zone,
+        lineage
+    )
+}
+
+/**
+ * Read-only view of the first [size] rows of a [SensorStore]. Rows are sorted
+ * by time, oldest first.
+ *
+ * [epochAt] and [value] decode a whole compressed block when the row is not
+ * in the newest one; walks over many rows use a [RowReader] instead.
+ */
+class SensorSeries internal constructor(
+    private val epochs: EpochColumn,
+    private val columns: Array<FloatColumn>,
+    val size: Int,
+    /** The same rows on the shared 10-minute raster */
+    val slots: SlotSeries,
+    /** The same rows rolled up per hour (UTC hours) */
+    val hourly: RollupSeries,
+    /** The same rows rolled up per local day */
+    val daily: RollupSeries,
+    private val night: RowMask,
+    private val nightZone: ZoneId,
+    /**
+     * Identifies the store this snapshot came from (0 for [EMPTY]). Two
+     * snapshots of the same lineage are versions of one append-only log, so
+     * the one with fewer rows is a prefix of the other.
+     */
+    val lineage: Long
+) {
+    companion object {
+        val EMPTY = SensorSeries(
+            EpochColumn.EMPTY, Array(SensorChannels.COUNT) { FloatColumn.EMPTY }, 0,
+            SlotSeries.EMPTY, RollupSeries.EMPTY, RollupSeries.EMPTY,
+            RowMask.EMPTY, ZoneId.systemDefault(), 0L
+        )
+    }
+
+    fun isEmpty() = size == 0
+
+    /** Epoch seconds (UTC) of row [row] */
+    fun epochAt(row: Int): Long = epochs[row]
+
+    /** Value of [channel] at [row], NaN if the row had none */
+    fun value(channel: Int, row: Int): Float = columns[channel][row]
+
+    /** Sequential access for walks; see [RowReader] */
+    fun reader(): RowReader = RowReader(epochs.reader(), columns)
+
+    /** First row whose epoch is at or after [epoch], [size] if none; O(log n) */
+    fun rowAtOrAfter(epoch: Long): Int = epochs.indexAtOrAfter(epoch)
+
+    /** Rows logged in [fromEpoch, toEpoch), found by binary search; nothing is copied */
+    fun slice(fromEpoch: Long, toEpoch: Long = Long.MAX_VALUE): RowSlice =
+        RowSlice(this, rowAtOrAfter(fromEpoch), rowAtOrAfter(toEpoch))
+
+    /**
+     * Rows at night (see [LocalClock.isNight]) in [zone]. Kept up to date on
+     * append for the zone the store was created in; any other zone is
+     * computed on the spot.
+     */
+    fun nightMask(zone: ZoneId = ZoneId.systemDefault()): RowMask {
+        if (zone == nightZone) return night
+        val clock = LocalClock(zone)
+        val r = epochs.reader()
+        return RowMask.build(size) { clock.isNight(r[it]) }
+    }
+}
+
+/**
+ * Walks a [SensorSeries] decoding every compressed block once per column
+ * touched, so a sequential (or forward-skipping) walk costs O(1) per row.
+ * Not thread-safe: each walk takes its own.
+ */
+class RowReader internal constructor(
+    private val epochs: EpochColumn.Reader,
+    private val columns: Array<FloatColumn>
+) {
+    private val readers = arrayOfNulls<FloatColumn.Reader>(columns.size)
+
+    fun epochAt(row: Int): Long = epochs[row]
+
+    fun value(channel: Int, row: Int): Float =
+        (readers[channel] ?: columns[channel].reader().also { readers[channel] = it })[row]
+}
+
+/**
+ * Rows [from] until [to] of [series]: a time range resolved to row indices,
+ * sharing the series' arrays. Row numbers stay those of the whole series.
+ */
+class RowSlice(val series: SensorSeries, val from: Int, val to: Int) {
+    val size: Int get() = to - from
+
+    fun isEmpty() = from >= to
+}
@@ -13,6 +13,7 @@ import android.widget.NumberPicker
 import android.widget.Spinner
 import android.widget.TextView
 import android.widget.Toast
+import androidx.core.widget.doAfterTextChanged
 import androidx.fragment.app.Fragment
 import com.google.android.material.switchmaterial.SwitchMaterial
 import okhttp3.*
@@ -28,12 +29,13 @@ class SettingsFragment : Fragment() {
     private lateinit var switchGridlines: SwitchMaterial
     private lateinit var spinnerTempUnit: Spinner
     private lateinit var switchDebugMode: SwitchMaterial
+    private lateinit var textHttpMetrics: TextView
     private lateinit var buttonClearCache: Button
     private lateinit var buttonDecimate: Button
     private lateinit var prefs: SharedPreferences
 
-    // OkHttp client shared:
-    private val client = OkHttpClient()
+    // OkHttp client shared app-wide:
+    private val client get() = HttpStack.client
 
     override fun onCreateView(
         inflater: LayoutInflater,
@@ -51,12 +53,21 @@ class SettingsFragment : Fragment() {
         switchGridlines        = root.findViewById(R.id.switch_gridlines)
         spinnerTempUnit        = root.findViewById(R.id.spinner_temp_unit)
         switchDebugMode        = root.findViewById(R.id.switch_debug_mode)
+        textHttpMetrics        = root.findViewById(R.id.text_http_metrics)
         buttonClearCache       = root.findViewById(R.id.button_clear_cache)
         buttonDecimate         = root.findViewById(R.id.button_decimate)
 
         // Load defaults
         editRefreshInterval.setText(prefs.getInt("refreshInterval", 5).toString())
         switchNotifications.isChecked = prefs.getBoolean("notifications", true)
+        switchDebugMode.isChecked = prefs.getBoolean("debugMode", false)
+        showHttpMetrics()
+
+        // Refresh interval: the longest the poller may wait between fetches
+        editRefreshInterval.doAfterTextChanged { text ->
+            val minutes = text?.toString()?.toIntOrNull() ?: return@doAfterTextChanged
+            if (minutes >= 1) prefs.edit().putInt("refreshInterval", minutes).apply()
+        }
 
         // Listen for toggle changes
         switchNotifications.setOnCheckedChangeListener { _, isChecked ->
@@ -72,6 +83,12 @@ class SettingsFragment : Fragment() {
             }
         }
 
+        // Debug mode: show what the shared HTTP client reused and served from cache
+        switchDebugMode.setOnCheckedChangeListener { _, isChecked ->
+            prefs.edit().putBoolean("debugMode", isChecked).apply()
+            showHttpMetrics()
+        }
+
         // NumberPicker setup…
         numberPickerPlants.minValue = 1
         numberPickerPlants.maxValue = 9
@@ -120,6 +137,16 @@ class SettingsFragment : Fragment() {
         return root
     }
 
+    override fun onResume() {
+        super.onResume()
+        showHttpMetrics()
+    }
+
+    private fun showHttpMetrics() {
+        textHttpMetrics.visibility = if (switchDebugMode.isChecked) View.VISIBLE else View.GONE
+        if (switchDebugMode.isChecked) textHttpMetrics.text = HttpStack.metrics().describe()
+    }
+
     private fun populateThresholdFields(count: Int) {
         containerThresholds.removeAllViews()
         for (i in 1..count) {
@@ -0,0 +1,105 @@
+package com.example.soilmonitor
+
+import java.time.ZoneId
+
+/**
+ * Incrementally maintained 10-minute raster of the sensor log: one float per
+ * channel per slot, where slot number = epoch / [SlotSeries.SLOT_SECONDS].
+ * Slots without a reading hold NaN; when several rows land in the same slot
+ * the latest one wins.
+ *
+ * Every slot also gets a night bit from [clock] as it is reached.
+ *
+ * Columns are [FloatColumnBuilder]s, so full blocks of slots are compressed
+ * like the store's rows (empty slots are runs of NaN and cost a bit each).
+ *
+ * Owned by [SensorStore], which feeds it every appended row. Like the store
+ * it only writes past the published size, except for the value of the newest
+ * slot, which every snapshot keeps its own copy of (see [FloatColumnBuilder]),
+ * so [snapshot]s are immutable while it grows.
+ */
+class SlotGrid(private val clock: LocalClock) {
+
+    private var firstSlot = Long.MIN_VALUE
+    private var size = 0
+    private val columns = Array(SensorChannels.COUNT) { FloatColumnBuilder() }
+    private val night = RowMaskBuilder()
+
+    /** Record one row; rows must arrive in time order. */
+    fun add(epoch: Long, values: FloatArray) {
+        val slot = SlotSeries.slotOf(epoch)
+        if (size == 0) firstSlot = slot
+        val idx = (slot - firstSlot).toInt()
+        if (idx >= size) {
+            for (c in columns) repeat(idx + 1 - size) { c.add(Float.NaN) }
+            for (p in size..idx) night.add(clock.isNight((firstSlot + p) * SlotSeries.SLOT_SECONDS))
+            size = idx + 1
+        }
+        for (c in columns.indices) {
+            if (!values[c].isNaN()) columns[c][idx] = values[c]
+        }
+    }
+
+    fun snapshot(): SlotSeries = SlotSeries(
+        firstSlot, size, Array(columns.size) { columns[it].snapshot() }, night.snapshot(), clock.zone
+    )
+}
+
+/**
+ * Read-only view of a [SlotGrid]: slot positions 0 until [size], position i
+ * covering the 10 minutes starting at [epochAt] (i).
+ */
+class SlotSeries internal constructor(
+    private val firstSlot: Long,
+    val size: Int,
+    private val columns: Array<FloatColumn>,
+    private val night: RowMask,
+    private val nightZone: ZoneId
+) {
+    companion object {
+        const val SLOT_SECONDS = 600L
+
+        val EMPTY = SlotSeries(
+            0, 0, Array(SensorChannels.COUNT) { FloatColumn.EMPTY }, RowMask.EMPTY,
+            ZoneId.systemDefault()
+        )
+
+        /** Slot number of [epoch] */
+        fun slotOf(epoch: Long): Long = Math.floorDiv(epoch, SLOT_SECONDS)
+    }
+
+    fun isEmpty() = size == 0
+
+    /** Start (epoch seconds) of slot position [pos] */
+    fun epochAt(pos: Int): Long = (firstSlot + pos) * SLOT_SECONDS
+
+    /** Position of the slot containing [epoch]; may be outside 0 until [size] */
+    fun positionOf(epoch: Long): Long = slotOf(epoch) - firstSlot
+
+    /** Latest value of [channel] in slot [pos], NaN if none; walks use a [reader] */
+    fun value(channel: Int, pos: Int): Float = columns[channel][pos]
+
+    /** Sequential access to slot values, decoding each compressed block once */
+    fun reader(): SlotReader = SlotReader(columns)
+
+    /** Slots starting at night in [zone]; see [SensorSeries.nightMask] */
+    fun nightMask(zone: ZoneId = ZoneId.systemDefault()): RowMask {
+        if (zone == nightZone) return night
+        val clock = LocalClock(zone)
+        return RowMask.build(size) { clock.isNight(epochAt(it)) }
+    }
+
+    /** First position whose slot starts at or after [epoch], clamped to 0..[size] */
+    fun firstAtOrAfter(epoch: Long): Int {
+        if (epoch == Long.MIN_VALUE) return 0
+        return (positionOf(epoch - 1) + 1).coerceIn(0L, size.toLong()).toInt()
+    }
+}
+
+/** Walks a [SlotSeries] like [RowReader] walks rows; not thread-safe */
+class SlotReader internal constructor(private val columns: Array<FloatColumn>) {
+    private val readers = arrayOfNulls<FloatColumn.Reader>(columns.size)
+
+    fun value(channel: Int, pos: Int): Float =
+        (readers[channel] ?: columns[channel].reader().also { readers[channel] = it })[pos]
+}
@@ -1,35 +1,35 @@
 package com.example.soilmonitor
 
 import android.os.Bundle
-import android.os.Handler
-import android.os.Looper
 import android.view.LayoutInflater
 import android.view.View
 import android.view.ViewGroup
 import android.widget.CheckBox
 import android.widget.Switch
+import android.widget.TextView
 import androidx.fragment.app.Fragment
+import androidx.lifecycle.Lifecycle
+import androidx.lifecycle.lifecycleScope
+import androidx.lifecycle.repeatOnLifecycle
 import com.github.mikephil.charting.charts.LineChart
 import com.github.mikephil.charting.components.LimitLine
 import com.github.mikephil.charting.components.XAxis
 import com.github.mikephil.charting.components.YAxis
-import com.github.mikephil.charting.data.Entry
 import com.github.mikephil.charting.data.LineData
 import com.github.mikephil.charting.data.LineDataSet
-import com.github.mikephil.charting.formatter.IndexAxisValueFormatter
-import com.github.mikephil.charting.interfaces.datasets.ILineDataSet
-import okhttp3.*
-import org.json.JSONObject
-import java.io.IOException
-import java.time.OffsetDateTime
-import java.time.format.DateTimeFormatter
-import kotlin.math.ceil
-import kotlin.math.roundToLong
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 
 class SurroundingFragment : Fragment() {
 
     /* ---------- UI ---------- */
     private lateinit var surroundingChart: LineChart
+    private lateinit var lod: ChartLod               // pixel-width decimation on zoom/pan
+    private lateinit var statsText: TextView
     private lateinit var switchTemp: Switch
     private lateinit var switchHumidity: Switch
     private lateinit var switchCO2: Switch
@@ -44,20 +44,15 @@ class SurroundingFragment : Fragment() {
     private lateinit var bridgeGapsCheckBox: CheckBox
 
     /* ---------- data ---------- */
-    private var dataList: List<JSONObject> = emptyList()
-    private val handler = Handler(Looper.getMainLooper())
-    private val refreshRunnable = object : Runnable {
-        override fun run() {
-            fetchSurroundingData()
-            handler.postDelayed(this, 60_000L)
-        }
-    }
+    private val series: SensorSeries              // the shared, immutable snapshot
+        get() = SensorLogRepository.series.value
 
     /* ---------- meta ---------- */
     private val sensorKeys = listOf(
         "sensor_temp", "sensor_hu", "sensor_co2",
         "sensor_ph", "sensor_ppm", "sensor_tc"
     )
+    private val channels = sensorKeys.map { SensorChannels.of(it) }.toIntArray()
     private val sensorLabels = listOf(
         "Temp", "Humidity", "CO₂", "pH", "PPM", "TC"
     )
@@ -81,6 +76,8 @@ class SurroundingFragment : Fragment() {
 
         /* ---- bind views ---- */
         surroundingChart = view.findViewById(R.id.surroundingChart)
+        lod              = ChartLod(surroundingChart)
+        statsText        = view.findViewById(R.id.surroundingStatsText)
 
         switchTemp     = view.findViewById(R.id.switchTemp)
         switchHumidity = view.findViewById(R.id.switchHumidity)
@@ -109,220 +106,248 @@ class SurroundingFragment : Fragment() {
             }
         }
 
-        /* ---- immediately render once (temperature on) ---- */
-        updateChart()
+        /* ---- render from the shared log, then append on every change ---- */
+        viewLifecycleOwner.lifecycleScope.launch {
+            viewLifecycleOwner.repeatOnLifecycle(Lifecycle.State.STARTED) {
+                SensorLogRepository.series.collect { onSeries(it) }
+            }
+        }
 
-        /* ---- start polling ---- */
-        handler.post(refreshRunnable)
+        /* ---- keep the log polled while this screen is visible ---- */
+        viewLifecycleOwner.lifecycleScope.launch {
+            viewLifecycleOwner.repeatOnLifecycle(Lifecycle.State.STARTED) {
+                PollScheduler.whileVisible(requireContext())
+            }
+        }
     }
 
-    override fun onDestroyView() {
-        super.onDestroyView()
-        handler.removeCallbacks(refreshRunnable)
-    }
+    /* ---------- chart ---------- */
 
-    /* ---------- network ---------- */
-
-    private fun fetchSurroundingData() {
-        OkHttpClient().newCall(
-            Request.Builder()
-                .url("https://g2f12813f9dfc61-garden.adb.eu-paris-1.oraclecloudapps.com/ords/admin/log/log")
-                .build()
-        ).enqueue(object : Callback {
-            override fun onFailure(call: Call, e: IOException) { /* ignore */ }
-            override fun onResponse(call: Call, response: Response) {
-                response.body?.string()?.let { body ->
-                    val jArr = JSONObject(body).getJSONArray("items")
-                    dataList = List(jArr.length()) { i -> jArr.getJSONObject(i) }
-                    activity?.runOnUiThread { if (isAdded) updateChart() }
-                }
-            }
-        })
+    /** Options captured on the main thread for one chart build */
+    private class ChartOptions(
+        val toggles: List<Boolean>,
+        val hideNight: Boolean,
+        val hideSeparators: Boolean,
+        val last24hOnly: Boolean,
+        val bridgeGaps: Boolean,
+        /** Chart width, for picking the [ChartTier] */
+        val pixels: Int
+    )
+
+    /**
+     * What is on the chart, built off the main thread and afterwards owned by
+     * it: [feed] keeps extending [sets] (one per toggled sensor, null while a
+     * sensor has no data) as polls bring in new rows.
+     */
+    private class ChartModel(
+        val opts: ChartOptions,
+        val feed: ChartFeed,
+        val sets: List<LineDataSet?>,
+        val separators: List<LimitLine>,
+        val leftAxisColor: Int,
+        val rightAxisColor: Int,
+        val activeCount: Int
+    ) {
+        var shownSeparators = 0
     }
 
-    /* ---------- chart ---------- */
+    private var chartJob: Job? = null
+    private var statsJob: Job? = null
+    private var model: ChartModel? = null
 
-    private fun updateChart() {
-        if (dataList.isEmpty()) return
+    /**
+     * Read the toggles and rebuild the chart from [series] on a worker thread;
+     * a newer call cancels a build that has not finished yet.
+     */
+    private fun updateChart(animate: Boolean = true) {
+        model = null
+        if (series.isEmpty()) return
+        showStats()
 
         /* ---- read options ---- */
-        val hideNight      = hideNightCheckBox.isChecked
-        val hideSeparators = hideSeparatorCheckBox.isChecked
-        val last24hOnly    = last24hCheckBox.isChecked
-        val bridgeGaps     = bridgeGapsCheckBox.isChecked
+        val opts = ChartOptions(
+            toggles = listOf(
+                switchTemp.isChecked, switchHumidity.isChecked, switchCO2.isChecked,
+                switchPH.isChecked, switchPPM.isChecked, switchTC.isChecked
+            ),
+            hideNight      = hideNightCheckBox.isChecked,
+            hideSeparators = hideSeparatorCheckBox.isChecked,
+            last24hOnly    = last24hCheckBox.isChecked,
+            bridgeGaps     = bridgeGapsCheckBox.isChecked,
+            pixels         = surroundingChart.width.takeIf { it > 0 }
+                ?: resources.displayMetrics.widthPixels
+        )
+        val snapshot = series
 
-        val now    = OffsetDateTime.now().plusHours(2)
-        val cutoff = now.minusHours(24)
+        chartJob?.cancel()
+        chartJob = viewLifecycleOwner.lifecycleScope.launch {
+            val built = withContext(Dispatchers.Default) { buildModel(snapshot, opts) }
+            showModel(built, animate)
+        }
+    }
 
-        val timeFmt = DateTimeFormatter.ofPattern("HH:mm")
-        val dateFmt = DateTimeFormatter.ofPattern("dd MMM")
+    /**
+     * A new snapshot of the log arrived: append its new rows to the chart, or
+     * rebuild it while a build is pending, in the last-24 h view (its window
+     * moves with the clock), when the history has grown enough for a coarser
+     * [ChartTier], or when a sensor without data so far needs a dataset.
+     */
+    private fun onSeries(s: SensorSeries) {
+        val m = model
+        if (m != null) showStats()
+        if (m == null || m.opts.last24hOnly || !m.feed.canFeed(s) ||
+            tierFor(s, Long.MIN_VALUE, m.opts) != m.feed.tier
+        ) {
+            updateChart(animate = surroundingChart.data == null)
+            return
+        }
 
-        /* ---- clear old extras ---- */
+        val batch = m.feed.feed(s)
+        if (m.sets.indices.any { m.sets[it] == null && batch.entries[it].isNotEmpty() }) {
+            updateChart(animate = false)
+            return
+        }
+        m.sets.forEachIndexed { i, set ->
+            if (set != null) lod.append(set, batch.entries[i], batch.replace[i])
+        }
         val xAxis = surroundingChart.xAxis
-        xAxis.removeAllLimitLines()
-        surroundingChart.axisLeft.removeAllLimitLines()
-
-        /* ---- 1. collect readings per sensor with coarse filters ---- */
-        val readingsPerSensor =
-            sensorKeys.associateWith { mutableListOf<Pair<OffsetDateTime, Float>>() }
-
-        dataList.forEach { item ->
-            val ts = OffsetDateTime.parse(item.getString("created_at")).plusHours(2)
-            if (last24hOnly && ts.isBefore(cutoff)) return@forEach
-            if (hideNight && ts.hour < 6)          return@forEach
+        for (k in m.shownSeparators until m.separators.size) xAxis.addLimitLine(m.separators[k])
+        m.shownSeparators = m.separators.size
+        lod.update()
+    }
 
-            sensorKeys.forEach { key ->
-                val v = item.optDouble(key, Double.NaN)
-                if (!v.isNaN()) readingsPerSensor[key]?.add(ts to v.toFloat())
-            }
+    /**
+     * Show the rolling 1 h / 24 h / 7 d range, mean and spread of every toggled
+     * sensor. They come from the shared incremental windows, so this costs the
+     * new readings only, never a scan of the history.
+     */
+    private fun showStats() {
+        val active = sensorKeys.indices.filter { toggleOf(it).isChecked }
+        val snapshot = series
+        statsJob?.cancel()
+        statsJob = viewLifecycleOwner.lifecycleScope.launch {
+            val stats = AnalyticsEngine.compute(
+                snapshot, emptyList(), IntArray(active.size) { channels[active[it]] }
+            )
+            statsText.text = stats.channels.mapIndexed { i, c ->
+                sensorLabels[active[i]] + "  " +
+                    c.rolling.joinToString("  ·  ") { "${it.label}: ${it.describe()}" }
+            }.joinToString("\n")
         }
+    }
 
-        /* ---- 2. determine active sensors ---- */
-        val sensorToggles = listOf(
-            switchTemp.isChecked, switchHumidity.isChecked, switchCO2.isChecked,
-            switchPH.isChecked, switchPPM.isChecked, switchTC.isChecked
+    private fun toggleOf(idx: Int): Switch =
+        listOf(switchTemp, switchHumidity, switchCO2, switchPH, switchPPM, switchTC)[idx]
+
+    /** Build datasets and separators for [series]; never touches views */
+    private fun CoroutineScope.buildModel(series: SensorSeries, o: ChartOptions): ChartModel {
+        /* ---- time helpers (epoch seconds) ---- */
+        val clock  = LocalClock()
+        val cutoff = if (o.last24hOnly) System.currentTimeMillis() / 1000 - 24 * 3600L
+                     else Long.MIN_VALUE
+
+        /* ---- 1. determine active sensors ---- */
+        val active = sensorKeys.indices.filter { o.toggles[it] }
+        val chans = IntArray(active.size) { channels[active[it]] }
+
+        /* ---- 2. walk rows (10-min slots carried forward when bridging, hourly /
+                daily means when those still fill the chart) → entries ---- */
+        val tier = tierFor(series, cutoff, o)
+        val separators = mutableListOf<LimitLine>()
+        val timeline = ChartTimeline(
+            clock, if (o.hideSeparators || tier == ChartTier.DAILY) null else separators
         )
+        val feed = ChartFeed(
+            chans, tier, o.bridgeGaps, cutoff, o.hideNight, { !it.isNaN() }, timeline
+        )
+        val batch = feed.feed(series) { ensureActive() }
 
-        /* ---- 3. build x-axis labels & slot list ---- */
-        val labels = mutableListOf<String>()
-        val slotList = mutableListOf<OffsetDateTime>()
-        var lastDateSeen: java.time.LocalDate? = null
-
-        if (bridgeGaps) {
-            /* -- find first & last timestamp among ALL readings -- */
-            val allTs = readingsPerSensor.values.flatten().map { it.first }
-            if (allTs.isEmpty()) return
-            var slot = allTs.minOrNull()!!
-                .withMinute((allTs.minOrNull()!!.minute / 10) * 10)
-                .withSecond(0).withNano(0)
-            val lastSlot = allTs.maxOrNull()!!
-                .withMinute((allTs.maxOrNull()!!.minute / 10) * 10)
-                .withSecond(0).withNano(0)
-
-            var pos = 0
-            while (!slot.isAfter(lastSlot)) {
-                val useSlot = !(hideNight && slot.hour < 6) &&
-                        !(last24hOnly && slot.isBefore(cutoff))
-
-                if (useSlot) {
-                    if (!hideSeparators && slot.toLocalDate() != lastDateSeen) {
-                        xAxis.addLimitLine(
-                            LimitLine(
-                                pos.toFloat(),
-                                slot.toLocalDate().format(dateFmt)
-                            )
-                        )
-                        lastDateSeen = slot.toLocalDate()
-                    }
-                    labels += slot.format(timeFmt)
-                    slotList += slot
-                    pos++
-                }
-                slot = slot.plusMinutes(10)
-            }
-        } else {
-            /* original unequal spacing */
-            var pos = 0
-            dataList.forEach { item ->
-                val ts = OffsetDateTime.parse(item.getString("created_at")).plusHours(2)
-                if (last24hOnly && ts.isBefore(cutoff)) return@forEach
-                if (hideNight && ts.hour < 6)          return@forEach
-
-                if (!hideSeparators && ts.toLocalDate() != lastDateSeen) {
-                    xAxis.addLimitLine(
-                        LimitLine(
-                            pos.toFloat(),
-                            ts.toLocalDate().format(dateFmt)
-                        )
-                    )
-                    lastDateSeen = ts.toLocalDate()
-                }
-                labels += ts.format(timeFmt)
-                slotList += ts                     // keep real timestamps for mapping
-                pos++
-            }
-        }
-
-        /* ---- 4. build datasets ---- */
-        val dataSets = mutableListOf<ILineDataSet>()
+        /* ---- 3. build datasets ---- */
         var activeCount = 0              // track visible series
         var leftAxisColor   = android.graphics.Color.DKGRAY
         var rightAxisColor  = android.graphics.Color.DKGRAY
 
-        sensorKeys.forEachIndexed { idx, key ->
-            if (!sensorToggles[idx]) return@forEachIndexed
-
-            val entries = mutableListOf<Entry>()
-            val slotToVal = mutableMapOf<OffsetDateTime, Float>()
-            readingsPerSensor[key]?.forEach { (ts, v) ->
-                val slot = if (bridgeGaps) {
-                    ts.withMinute((ts.minute / 10) * 10).withSecond(0).withNano(0)
-                } else ts
-                slotToVal[slot] = v                       // keep latest per slot
-            }
-
-            var prevVal: Float? = null
-            var haveFirst = false
-
-            slotList.forEachIndexed { pos, slot ->
-                val v = slotToVal[slot] ?: if (bridgeGaps && haveFirst) prevVal else null
-                if (v != null) {
-                    entries += Entry(pos.toFloat(), v)
-                    prevVal = v
-                    haveFirst = true
-                }
+        val sets = active.mapIndexed { i, idx ->
+            val entries = batch.entries[i]
+            if (entries.isEmpty()) return@mapIndexed null
+
+            val color = sensorColors.getOrElse(idx) { android.graphics.Color.BLACK }
+            val set = LineDataSet(entries, sensorLabels[idx]).apply {
+                lineWidth = 2f
+                setDrawCircles(false)
+                setDrawValues(false)
+                this.color = color
+
+                // decide which axis to use
+                axisDependency = if (activeCount == 1)
+                    YAxis.AxisDependency.RIGHT   // 2nd visible series
+                else
+                    YAxis.AxisDependency.LEFT    // 1st + 3rd+
             }
 
-            if (entries.isNotEmpty()) {
-                val color = sensorColors.getOrElse(idx) { android.graphics.Color.BLACK }
+            // remember colours for axes
+            if (activeCount == 0)  leftAxisColor  = color
+            if (activeCount == 1)  rightAxisColor = color
 
-                dataSets += LineDataSet(entries, sensorLabels[idx]).apply {
-                    lineWidth = 2f
-                    setDrawCircles(false)
-                    setDrawValues(false)
-                    this.color = color
-
-                    // decide which axis to use
-                    axisDependency = if (activeCount == 1)
-                        YAxis.AxisDependency.RIGHT   // 2nd visible series
-                    else
-                        YAxis.AxisDependency.LEFT    // 1st + 3rd+
-                }
+            activeCount++
+            set
+        }
 
-                // remember colours for axes
-                if (activeCount == 0)  leftAxisColor  = color
-                if (activeCount == 1)  rightAxisColor = color
+        return ChartModel(
+            opts           = o,
+            feed           = feed,
+            sets           = sets,
+            separators     = separators,
+            leftAxisColor  = leftAxisColor,
+            rightAxisColor = rightAxisColor,
+            activeCount    = activeCount
+        )
+    }
 
-                activeCount++
-            }
-        }
+    /** Resolution to plot [series] from [cutoff] on at */
+    private fun tierFor(series: SensorSeries, cutoff: Long, o: ChartOptions): ChartTier =
+        ChartTier.pick(
+            series, cutoff, o.pixels, if (o.bridgeGaps) ChartTier.SLOTS else ChartTier.ROWS
+        )
 
-        /* ---- 5. draw ---- */
-        surroundingChart.data = LineData(dataSets)
-        surroundingChart.xAxis.apply {
-            valueFormatter = IndexAxisValueFormatter(labels)
+    /** Swap [m] into the chart (main thread) */
+    private fun showModel(m: ChartModel, animate: Boolean) {
+        /* ---- clear old extras ---- */
+        val xAxis = surroundingChart.xAxis
+        xAxis.removeAllLimitLines()
+        surroundingChart.axisLeft.removeAllLimitLines()
+        m.separators.forEach(xAxis::addLimitLine)
+        m.shownSeparators = m.separators.size
+
+        /* ---- draw ---- */
+        val sets = m.sets.filterNotNull()
+        surroundingChart.data = LineData(sets)
+        lod.bind(sets)
+        xAxis.apply {
+            valueFormatter = m.feed.timeline.formatter()
             position = XAxis.XAxisPosition.BOTTOM
             setDrawGridLines(false)
         }
 
         // colour the axes to match their series
         surroundingChart.axisLeft.apply {
-            textColor = leftAxisColor
-            axisLineColor = leftAxisColor
+            textColor = m.leftAxisColor
+            axisLineColor = m.leftAxisColor
             setDrawGridLines(true)
         }
 
         surroundingChart.axisRight.apply {
-            isEnabled = activeCount >= 2
-            textColor = rightAxisColor
-            axisLineColor = rightAxisColor
+            isEnabled = m.activeCount >= 2
+            textColor = m.rightAxisColor
+            axisLineColor = m.rightAxisColor
             setDrawGridLines(false)
         }
 
         surroundingChart.setTouchEnabled(true)
         surroundingChart.setPinchZoom(true)
         surroundingChart.description.isEnabled = false
-        surroundingChart.animateX(800)
+        model = m
+        if (animate) surroundingChart.animateX(800)
         surroundingChart.invalidate()
     }
 }
@@ -0,0 +1,227 @@
+package com.example.soilmonitor
+
+import java.io.DataInput
+import java.io.DataOutput
+import java.io.File
+import java.io.IOException
+
+/**
+ * One watering of [plant]: the raw reading crossed to `wet` or below right
+ * after [epoch] and stayed there, bottoming out at [minEpoch] after a drop of
+ * [depth] raw units from the last reading before the crossing.
+ */
+data class WateringEvent(
+    val plant: Int,
+    val epoch: Long,
+    val minEpoch: Long,
+    val depth: Float
+)
+
+/**
+ * The watering rule shared by [WateringTracker] and [DryForecaster]. A
+ * crossing starts where a reading drops to `wet` or below right after one
+ * above it and is confirmed once [STABLE] readings in a row stay there, so a
+ * single noisy sample never counts as a watering. Its minimum is tracked
+ * until the plant dries above `wet` again (the latest of equal minima wins).
+ */
+class WateringDetector(private val wet: Float) {
+
+    companion object {
+        const val STABLE = 3
+    }
+
+    /* ---- previous valid reading ---- */
+    private var prevEpoch = Long.MIN_VALUE
+    private var prevValue = Float.NaN
+
+    /** Readings in a row at or below `wet` since the crossing; 0 when none is in progress */
+    var run = 0
+        private set
+
+    /* ---- crossing in progress, valid while run > 0 ---- */
+    /** Epoch of the reading before the crossing */
+    var start = Long.MIN_VALUE
+        private set
+    /** Value of that reading */
+    var peak = Float.NaN
+        private set
+    var minEpoch = Long.MIN_VALUE
+        private set
+    var min = Float.NaN
+        private set
+
+    /** The last reading confirmed the crossing in progress as a watering */
+    val confirmed: Boolean get() = run == STABLE
+
+    /** One valid reading, in time order */
+    fun accept(epoch: Long, v: Float) {
+        if (v <= wet) {
+            if (prevValue > wet) {
+                run = 1
+                start = prevEpoch
+                peak = prevValue
+                minEpoch = epoch
+                min = v
+            } else if (run > 0) {
+                run++
+                if (v <= min) { min = v; minEpoch = epoch }
+            }
+        } else {
+            run = 0
+        }
+        prevEpoch = epoch
+        prevValue = v
+    }
+
+    fun save(out: DataOutput) {
+        out.writeLong(prevEpoch)
+        out.writeFloat(prevValue)
+        out.writeInt(run)
+        out.writeLong(start)
+        out.writeFloat(peak)
+        out.writeLong(minEpoch)
+        out.writeFloat(min)
+    }
+
+    /** Counterpart of [save], on a freshly created detector */
+    fun restore(inp: DataInput) {
+        prevEpoch = inp.readLong()
+        prevValue = inp.readFloat()
+        run = inp.readInt()
+        start = inp.readLong()
+        peak = inp.readFloat()
+        minEpoch = inp.readLong()
+        min = inp.readFloat()
+    }
+}
+
+/**
+ * Streaming watering history for one plant: every watering the
+ * [WateringDetector] confirms is kept, oldest first, and the last one is
+ * updated while its minimum still falls.
+ *
+ * Each reading is consumed exactly once as the series grows, so lookups are
+ * O(1) or a binary search however long the history.
+ */
+class WateringTracker(private val plant: Int, wet: Float) :
+    ReadingTracker(SensorChannels.moisture(plant)), PersistentTracker {
+
+    private val detector = WateringDetector(wet)
+
+    /* ---- confirmed waterings; only the last one can still change ---- */
+    private var starts = LongArray(16)
+    private var minEpochs = LongArray(16)
+    private var depths = FloatArray(16)
+    private var count = 0
+
+    override fun accept(epoch: Long, v: Float) {
+        val d = detector
+        d.accept(epoch, v)
+        if (d.confirmed) {
+            if (count == starts.size) grow()
+            count++
+        }
+        if (d.run >= WateringDetector.STABLE) {
+            starts[count - 1] = d.start
+            minEpochs[count - 1] = d.minEpoch
+            depths[count - 1] = d.peak - d.min
+        }
+    }
+
+    private fun event(i: Int) = WateringEvent(plant, starts[i], minEpochs[i], depths[i])
+
+    /** Latest watering starting at or after [since], or null */
+    fun last(since: Long = Long.MIN_VALUE): WateringEvent? =
+        if (count > 0 && starts[count - 1] >= since) event(count - 1) else null
+
+    /** Waterings starting in [from, to), oldest first */
+    fun between(from: Long, to: Long): List<WateringEvent> =
+        (firstAtOrAfter(from) until firstAtOrAfter(to)).map(::event)
+
+    /** Mean seconds between consecutive waterings starting at or after [since]; null below two */
+    fun meanInterval(since: Long = Long.MIN_VALUE): Long? {
+        val first = firstAtOrAfter(since)
+        val n = count - first
+        if (n < 2) return null
+        return (starts[count - 1] - starts[first]) / (n - 1)
+    }
+
+    private fun firstAtOrAfter(epoch: Long): Int {
+        var lo = 0
+        var hi = count
+        while (lo < hi) {
+            val mid = (lo + hi) ushr 1
+            if (starts[mid] < epoch) lo = mid + 1 else hi = mid
+        }
+        return lo
+    }
+
+    private fun grow() {
+        starts = starts.copyOf(starts.size * 2)
+        minEpochs = minEpochs.copyOf(starts.size)
+        depths = depths.copyOf(starts.size)
+    }
+
+    override fun save(out: DataOutput) {
+        saveProgress(out)
+        detector.save(out)
+        out.writeInt(count)
+        for (i in 0 until count) {
+            out.writeLong(starts[i])
+            out.writeLong(minEpochs[i])
+            out.writeFloat(depths[i])
+        }
+    }
+
+    override fun restore(inp: DataInput) {
+        restoreProgress(inp)
+        detector.restore(inp)
+        val n = inp.readInt()
+        if (n < 0) throw IOException("bad event count $n")
+        while (starts.size < n) grow()
+        for (i in 0 until n) {
+            starts[i] = inp.readLong()
+            minEpochs[i] = inp.readLong()
+            depths[i] = inp.readFloat()
+        }
+        count = n
+    }
+}
+
+/**
+ * Process-wide watering history, one [WateringTracker] per plant and wet
+ * threshold, kept in step with the shared log and saved between runs (see
+ * [SavedTrackerIndex]), so a cold start does not re-detect every watering in
+ * the history.
+ */
+object WateringIndex {
+
+    private const val MAGIC = 0x57415452            // "WATR"
+    private const val VERSION = 1
+
+    private val index = SavedTrackerIndex(MAGIC, VERSION) { key ->
+        WateringTracker(key.first, key.second)
+    }
+
+    /** Latest watering of [plant] starting at or after [since], or null */
+    fun last(series: SensorSeries, plant: Int, wet: Float, since: Long = Long.MIN_VALUE) =
+        index.query(series, plant, wet) { it.last(since) }
+
+    /** Waterings of [plant] starting in [from, to), oldest first */
+    fun between(series: SensorSeries, plant: Int, wet: Float, from: Long, to: Long) =
+        index.query(series, plant, wet) { it.between(from, to) }
+
+    /** Mean seconds between waterings of [plant] since [since], null below two waterings */
+    fun meanInterval(series: SensorSeries, plant: Int, wet: Float, since: Long = Long.MIN_VALUE) =
+        index.query(series, plant, wet) { it.meanInterval(since) }
+
+    /* ================================================================ */
+    /*  ingest + persistence (driven by SensorLogRepository)            */
+    /* ================================================================ */
+
+    internal fun attach(f: File) = index.attach(f)
+
+    internal fun load() = index.load()
+
+    internal fun ingest(series: SensorSeries) = index.ingest(series)
+}
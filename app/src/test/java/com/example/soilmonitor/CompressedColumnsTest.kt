@@ -0,0 +1,139 @@
+package com.example.soilmonitor
+
+import org.junit.Assert.*
+import org.junit.Test
+import kotlin.random.Random
+
+/**
+ * Round trips through the [Gorilla] codecs and the column builders that seal
+ * blocks with them.
+ */
+class CompressedColumnsTest {
+
+    private val block = FloatColumnBuilder.BLOCK
+
+    private fun assertSameFloats(expected: FloatArray, actual: FloatArray, n: Int) {
+        for (i in 0 until n) {
+            assertEquals(
+                "value $i", java.lang.Float.floatToRawIntBits(expected[i]),
+                java.lang.Float.floatToRawIntBits(actual[i])
+            )
+        }
+    }
+
+    private fun floatRoundTrip(src: FloatArray) {
+        val out = FloatArray(src.size)
+        Gorilla.decodeFloats(Gorilla.encodeFloats(src, src.size), src.size, out)
+        assertSameFloats(src, out, src.size)
+    }
+
+    private fun epochRoundTrip(src: LongArray) {
+        val out = LongArray(src.size)
+        Gorilla.decodeEpochs(Gorilla.encodeEpochs(src, src.size), src.size, out)
+        assertArrayEquals(src, out)
+    }
+
+    @Test
+    fun floatsWithNaNRunsAndSpecialValues() {
+        val random = Random(19)
+        val src = FloatArray(block) { i ->
+            when {
+                i < 50 -> Float.NaN                                  // column empty at first
+                i == 500 -> Float.POSITIVE_INFINITY
+                i == 501 -> -0f
+                i == 502 -> Float.MIN_VALUE
+                i == 503 -> -Float.MAX_VALUE
+                i % 97 == 0 -> Float.NaN                             // gaps
+                i % 10 < 4 -> 350f                                   // equal consecutive values
+                else -> 300f + random.nextInt(120) + random.nextFloat()
+            }
+        }
+        floatRoundTrip(src)
+        floatRoundTrip(FloatArray(block) { Float.NaN })
+        floatRoundTrip(FloatArray(block) { 42f })
+        floatRoundTrip(FloatArray(block) { Float.fromBits(random.nextInt()) })
+        floatRoundTrip(FloatArray(1) { 1f })
+    }
+
+    @Test
+    fun epochsWithSteadyCadenceAndLargeDeltaOfDeltas() {
+        var e = 1_748_736_000L
+        val random = Random(20)
+        val src = LongArray(block) { i ->
+            e += when {
+                i == 0 -> 0L
+                i % 200 == 0 -> 30L * 86_400                         // month-long outage: 64-bit bucket
+                i % 150 == 0 -> 3L * 86_400                          // 20-bit bucket
+                i % 50 == 0 -> 1_800L                                // 12-bit bucket
+                i % 7 == 0 -> 0L                                     // equal epochs
+                i % 5 == 0 -> 600L + random.nextInt(-30, 30)         // jitter: 7-bit bucket
+                else -> 600L                                         // steady cadence: "0"
+            }
+            e
+        }
+        epochRoundTrip(src)
+        epochRoundTrip(LongArray(block) { 1_748_736_000L + it * 600L })
+        epochRoundTrip(longArrayOf(0L, Long.MAX_VALUE / 2, Long.MAX_VALUE / 2, 1L))
+        epochRoundTrip(LongArray(1) { 1_748_736_000L })
+    }
+
+    @Test
+    fun floatColumnAcrossSealedBlocks() {
+        val random = Random(21)
+        val n = 3 * block + 17
+        val src = FloatArray(n) { if (it % 11 == 0) Float.NaN else 300f + random.nextInt(50) }
+        val builder = FloatColumnBuilder()
+        src.forEach(builder::add)
+        val column = builder.snapshot()
+
+        assertEquals(n, column.size)
+        val r = column.reader()
+        assertSameFloats(src, FloatArray(n) { r[it] }, n)
+        // random access, including both sides of each block boundary
+        for (i in listOf(0, block - 1, block, 2 * block - 1, 2 * block, 3 * block, n - 1)) {
+            assertEquals(
+                java.lang.Float.floatToRawIntBits(src[i]), java.lang.Float.floatToRawIntBits(column[i])
+            )
+        }
+    }
+
+    @Test
+    fun snapshotsStayUnchangedWhileTheBuilderSealsAndRewrites() {
+        val builder = FloatColumnBuilder()
+        repeat(block) { builder.add(it.toFloat()) }
+        val full = builder.snapshot()                 // exactly one full, not yet sealed block
+
+        builder.add(-1f)                              // seals the first block
+        builder[block] = -2f                          // rewrites the newest value
+        val grown = builder.snapshot()
+
+        assertEquals(block, full.size)
+        assertEquals(block - 1f, full[block - 1])
+        assertEquals(0f, grown[0])
+        assertEquals(block - 1f, grown[block - 1])
+        assertEquals(-2f, grown[block])
+
+        builder[block] = -3f
+        assertEquals(-2f, grown[block])               // a snapshot keeps its newest value
+    }
+
+    @Test
+    fun epochColumnSearchAcrossBlocks() {
+        val builder = EpochColumnBuilder()
+        val n = 2 * block + 5
+        val epochs = LongArray(n) { 1_000L + (it / 2) * 600L }  // pairs of equal epochs
+        epochs.forEach(builder::add)
+        val column = builder.snapshot()
+
+        val r = column.reader()
+        assertArrayEquals(epochs, LongArray(n) { r[it] })
+        val probes = listOf(
+            0L, 1_000L, 1_001L, epochs[block - 1], epochs[block], epochs[block] + 1, epochs[n - 1],
+            Long.MAX_VALUE
+        )
+        for (probe in probes) {
+            val expected = epochs.indexOfFirst { it >= probe }.let { if (it < 0) n else it }
+            assertEquals("probe $probe", expected, column.indexAtOrAfter(probe))
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.soilmonitor
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+
+/**
+ * [DryForecaster] on synthetic drying curves.
+ */
+class DryForecasterTest {
+
+    private val wet = 330f
+    private val dry = 372f
+    private val t0 = 1_748_736_000L                 // 2025-06-01T00:00:00Z
+
+    private fun row(store: SensorStore, epoch: Long, v: Float) {
+        val values = FloatArray(SensorChannels.COUNT) { Float.NaN }
+        values[SensorChannels.moisture(0)] = v
+        store.append(epoch, values)
+    }
+
+    /** 20 h of fast drying (5 / h), a watering back to 300, then [hours] h at 2 / h */
+    private fun wateredLog(hours: Int): SensorStore {
+        val store = SensorStore()
+        for (h in 0 until 20) row(store, t0 + h * 3600L, 300f + 5 * h)
+        val watered = t0 + 20 * 3600L
+        for (h in 0..hours) row(store, watered + h * 3600L, 300f + 2 * h)
+        return store
+    }
+
+    @Test
+    fun predictsCrossingOfLinearDryingCurve() {
+        val t = DryForecaster(SensorChannels.moisture(0), wet)
+        t.feed(wateredLog(24).snapshot())
+
+        val f = t.forecast(dry)!!
+        val watered = t0 + 20 * 3600L
+        val last = watered + 24 * 3600L
+        // 348 now, 2 / h to go to 372: 12 h after the last reading
+        assertEquals((last + 12 * 3600L).toDouble(), f.dryEpoch.toDouble(), 60.0)
+        assertEquals(watered, f.originEpoch)
+        assertEquals(300f, f.originValue, 0.01f)
+        // an exact line leaves (almost) no slope error
+        assertEquals(f.dryEpoch.toDouble(), f.earliest.toDouble(), 60.0)
+        assertEquals(f.dryEpoch.toDouble(), f.latest!!.toDouble(), 60.0)
+    }
+
+    @Test
+    fun confirmedWateringRestartsTheFit() {
+        val t = DryForecaster(SensorChannels.moisture(0), wet)
+        t.feed(wateredLog(1).snapshot())
+        // two readings at or below wet: not a confirmed watering yet
+        assertNotEquals(t0 + 20 * 3600L, t.forecast(dry)?.originEpoch)
+
+        t.feed(wateredLog(5).snapshot())
+        val f = t.forecast(dry)!!
+        assertEquals(t0 + 20 * 3600L, f.originEpoch)
+        // 310 now at 2 / h (not 5 / h) to 372: 31 h after the last reading
+        assertEquals((t0 + 25 * 3600L + 31 * 3600L).toDouble(), f.dryEpoch.toDouble(), 60.0)
+    }
+
+    @Test
+    fun singleDipToWetDoesNotResetTheFit() {
+        val store = SensorStore()
+        for (h in 0 until 20) row(store, t0 + h * 3600L, if (h == 10) wet - 5 else 340f + h)
+        val series = store.snapshot()
+
+        val t = DryForecaster(SensorChannels.moisture(0), wet)
+        t.feed(series)
+        val f = t.forecast(dry)!!
+        assertEquals(t0, f.originEpoch)
+        // and the watering history agrees that there was no watering
+        assertNull(WateringTracker(0, wet).apply { feed(series) }.last())
+    }
+
+    @Test
+    fun incrementalFeedMatchesOneShot() {
+        val whole = DryForecaster(SensorChannels.moisture(0), wet)
+        whole.feed(wateredLog(24).snapshot())
+
+        val store = wateredLog(10)
+        val stepwise = DryForecaster(SensorChannels.moisture(0), wet)
+        stepwise.feed(store.snapshot())
+        for (h in 11..24) row(store, t0 + (20 + h) * 3600L, 300f + 2 * h)
+        stepwise.feed(store.snapshot())
+
+        assertEquals(whole.forecast(dry), stepwise.forecast(dry))
+    }
+
+    @Test
+    fun restoredForecasterResumesWithNewRowsOnly() {
+        val store = wateredLog(10)
+        val saved = DryForecaster(SensorChannels.moisture(0), wet)
+        saved.feed(store.snapshot())
+        val bytes = ByteArrayOutputStream()
+        DataOutputStream(bytes).use(saved::save)
+
+        val restored = DryForecaster(SensorChannels.moisture(0), wet)
+        DataInputStream(ByteArrayInputStream(bytes.toByteArray())).use(restored::restore)
+        for (h in 11..24) row(store, t0 + (20 + h) * 3600L, 300f + 2 * h)
+        val grown = store.snapshot()
+        assertTrue(restored.follows(grown))
+        restored.feed(grown)
+
+        val whole = DryForecaster(SensorChannels.moisture(0), wet)
+        whole.feed(wateredLog(24).snapshot())
+        assertEquals(whole.forecast(dry), restored.forecast(dry))
+    }
+
+    @Test
+    fun noForecastOnceDryOrNotDrying() {
+        val t = DryForecaster(SensorChannels.moisture(0), wet)
+        t.feed(wateredLog(24).snapshot())
+        assertNull(t.forecast(340f))                // already past the threshold
+
+        val store = SensorStore()
+        for (h in 0 until 10) row(store, t0 + h * 3600L, 320f - h)
+        val wetting = DryForecaster(SensorChannels.moisture(0), wet)
+        wetting.feed(store.snapshot())
+        assertNull(wetting.forecast(dry))           // moving away from dry
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.soilmonitor
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.time.Instant
+import java.time.ZoneId
+
+/**
+ * [LocalClock]'s cached offset around DST transitions.
+ */
+class LocalClockTest {
+
+    private val amsterdam = ZoneId.of("Europe/Amsterdam")
+    private val springForward = 1_743_296_400L      // 2025-03-30T01:00:00Z, CET -> CEST
+
+    @Test
+    fun lookupExactlyAtTransitionDoesNotLeakIntoTheHourBefore() {
+        val clock = LocalClock(amsterdam)
+        assertEquals(3, clock.hour(springForward))             // 03:00 CEST
+        assertEquals(1, clock.hour(springForward - 1800))      // 01:30 CET, not 02:30
+        assertEquals(3, clock.hour(springForward))
+    }
+
+    @Test
+    fun matchesZoneRulesAcrossAYear() {
+        val clock = LocalClock(amsterdam)
+        val rules = amsterdam.rules
+        var epoch = springForward - 200 * 86_400L
+        while (epoch < springForward + 200 * 86_400L) {
+            val offset = rules.getOffset(Instant.ofEpochSecond(epoch)).totalSeconds
+            assertEquals("epoch $epoch", epoch + offset, clock.localSeconds(epoch))
+            epoch += 1_800L
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.soilmonitor
+
+import okhttp3.OkHttpClient
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import java.io.IOException
+import kotlin.concurrent.thread
+
+/**
+ * [LongPollClient] against the offline [StandInLogServer].
+ */
+class LongPollClientTest {
+
+    private lateinit var server: StandInLogServer
+    private val http = OkHttpClient()
+
+    @Before
+    fun setUp() {
+        server = StandInLogServer().start()
+    }
+
+    @After
+    fun tearDown() {
+        server.close()
+    }
+
+    @Test
+    fun deliversRowLoggedWhileWaiting() {
+        server.emit()
+        server.emit()
+        val store = SensorStore()
+        assertEquals(2, OrdsLogClient(http, server.logUrl).fetch(LogQuery(), store))
+
+        val emitter = thread {
+            Thread.sleep(300)
+            server.emit()
+        }
+        val rows = LongPollClient(http, server.waitUrl, timeoutS = 10)
+            .waitForRows(store.lastEpoch, store)
+        emitter.join()
+
+        assertEquals(1, rows)
+        assertEquals(3, store.size)
+        val series = store.snapshot()
+        assertEquals(series.epochAt(1) + 600L, series.epochAt(2))
+        assertFalse(series.value(SensorChannels.of("sensor_temp"), 2).isNaN())
+    }
+
+    @Test
+    fun answersNothingAfterTimeout() {
+        val store = SensorStore()
+        val since = server.emit()
+
+        assertEquals(0, LongPollClient(http, server.waitUrl, timeoutS = 1).waitForRows(since, store))
+        assertEquals(0, store.size)
+    }
+
+    @Test(expected = LongPollUnsupportedException::class)
+    fun reportsMissingEndpointSoCallersFallBackToPolling() {
+        LongPollClient(http, server.logUrl.resolve("/ords/admin/log/missing")!!)
+            .waitForRows(server.emit(), SensorStore())
+    }
+
+    @Test
+    fun cancelAbortsWait() {
+        val client = LongPollClient(http, server.waitUrl, timeoutS = 30)
+        val since = server.emit()
+        val token = WaitToken()
+        val canceller = thread {
+            Thread.sleep(300)
+            token.cancel()
+        }
+        try {
+            client.waitForRows(since, SensorStore(), token)
+            fail("wait should have been cancelled")
+        } catch (e: IOException) {
+            // expected
+        }
+        canceller.join()
+    }
+
+    @Test
+    fun cancelBeforeTheWaitStartsIsNotLost() {
+        val client = LongPollClient(http, server.waitUrl, timeoutS = 30)
+        val since = server.emit()
+        val token = WaitToken().apply { cancel() }
+        val started = System.nanoTime()
+        try {
+            client.waitForRows(since, SensorStore(), token)
+            fail("wait should have been cancelled")
+        } catch (e: IOException) {
+            // expected
+        }
+        assertTrue(System.nanoTime() - started < 5_000_000_000L)
+
+        // a new run has its own token and waits normally
+        val next = LongPollClient(http, server.waitUrl, timeoutS = 1)
+        assertEquals(0, next.waitForRows(since, SensorStore(), WaitToken()))
+    }
+}
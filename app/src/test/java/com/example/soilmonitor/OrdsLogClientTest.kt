@@ -0,0 +1,135 @@
+package com.example.soilmonitor
+
+import okhttp3.OkHttpClient
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import java.time.Instant
+
+/**
+ * [OrdsLogClient] against a local mock ORDS server.
+ */
+class OrdsLogClientTest {
+
+    private lateinit var server: MockWebServer
+    private lateinit var client: OrdsLogClient
+
+    @Before
+    fun setUp() {
+        server = MockWebServer()
+        server.start()
+        client = OrdsLogClient(OkHttpClient(), server.url("/ords/admin/log/log"))
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    private fun item(createdAt: String, u0: Int) =
+        """{"created_at":"$createdAt","sensor_u0":$u0,"sensor_temp":21.5}"""
+
+    private fun page(hasMore: Boolean, next: String?, vararg items: String): MockResponse {
+        val links = if (next == null) "" else """{"rel":"next","href":"$next"}"""
+        return MockResponse().setBody(
+            """{"items":[${items.joinToString(",")}],"hasMore":$hasMore,"links":[$links]}"""
+        )
+    }
+
+    @Test
+    fun pushesRangeAndLimitDown() {
+        server.enqueue(page(false, null, item("2025-06-01T08:10:00Z", 350)))
+
+        val store = SensorStore()
+        client.fetch(LogQuery(since = 1_748_765_400L), store)
+
+        val url = server.takeRequest().requestUrl!!
+        assertEquals(
+            """{"created_at":{"${'$'}gt":{"${'$'}date":"2025-06-01T08:10:00Z"}},"${'$'}orderby":{"created_at":"asc"}}""",
+            url.queryParameter("q")
+        )
+        assertEquals(OrdsLogClient.PAGE_SIZE.toString(), url.queryParameter("limit"))
+        assertNull(url.queryParameter("fields"))
+    }
+
+    @Test
+    fun followsNextLinksUntilNoMore() {
+        server.enqueue(page(true, server.url("/ords/admin/log/log?offset=2").toString(),
+            item("2025-06-01T08:00:00Z", 340), item("2025-06-01T08:10:00Z", 345)))
+        server.enqueue(page(false, null, item("2025-06-01T08:20:00Z", 350)))
+
+        val store = SensorStore()
+        assertEquals(3, client.fetch(LogQuery(), store))
+        assertEquals(2, server.requestCount)
+        server.takeRequest()
+        assertEquals("2", server.takeRequest().requestUrl!!.queryParameter("offset"))
+
+        val rows = store.snapshot()
+        assertEquals(1_748_765_400L, rows.epochAt(1))
+        assertEquals(350f, rows.value(SensorChannels.of("sensor_u0"), 2))
+        assertEquals(21.5f, rows.value(SensorChannels.of("sensor_temp"), 0))
+        assertTrue(rows.value(SensorChannels.of("sensor_hu"), 0).isNaN())
+    }
+
+    @Test
+    fun limitAbovePageSizeStopsMidPage() {
+        val t0 = 1_748_736_000L
+        val size = OrdsLogClient.PAGE_SIZE
+        fun items(from: Int) = Array(size) {
+            item(Instant.ofEpochSecond(t0 + (from + it) * 600L).toString(), 340)
+        }
+        fun next(offset: Int) = server.url("/ords/admin/log/log?offset=$offset&limit=$size").toString()
+        // next links ask for a full page, as ORDS' own links do
+        server.enqueue(page(true, next(size), *items(0)))
+        server.enqueue(page(true, next(2 * size), *items(size)))
+
+        val limit = size + size / 2
+        val store = SensorStore()
+        assertEquals(limit, client.fetch(LogQuery(limit = limit), store))
+        assertEquals(limit, store.size)
+        assertEquals(t0 + (limit - 1) * 600L, store.lastEpoch)
+        assertEquals(2, server.requestCount)
+        assertEquals(size.toString(), server.takeRequest().requestUrl!!.queryParameter("limit"))
+    }
+
+    @Test
+    fun latestAsksForOneRowNewestFirst() {
+        server.enqueue(page(true, "ignored", item("2025-06-01T08:20:00Z", 350)))
+
+        val store = SensorStore()
+        assertEquals(1, client.fetch(LogQuery.latest(), store))
+
+        val url = server.takeRequest().requestUrl!!
+        assertEquals("1", url.queryParameter("limit"))
+        assertTrue(url.queryParameter("q")!!.contains("\"desc\""))
+        assertEquals(1, server.requestCount)
+    }
+
+    @Test
+    fun conditionalFetchSavesValidatorsAndHonours304() {
+        server.enqueue(
+            page(false, null, item("2025-06-01T08:20:00Z", 350))
+                .setHeader("ETag", "\"v1\"")
+                .setHeader("Last-Modified", "Sun, 01 Jun 2025 08:20:00 GMT")
+        )
+        server.enqueue(MockResponse().setResponseCode(304))
+
+        val first = client.fetchIfChanged(LogQuery.latest(), SensorStore(), null)
+        assertTrue(first.modified)
+        assertEquals(1, first.rows)
+        assertEquals(CacheValidators("\"v1\"", "Sun, 01 Jun 2025 08:20:00 GMT"), first.validators)
+        assertNull(server.takeRequest().getHeader("If-None-Match"))
+
+        val store = SensorStore()
+        val second = client.fetchIfChanged(LogQuery.latest(), store, first.validators)
+        assertFalse(second.modified)
+        assertEquals(0, store.size)
+        assertEquals(first.validators, second.validators)
+        val request = server.takeRequest()
+        assertEquals("\"v1\"", request.getHeader("If-None-Match"))
+        assertEquals("Sun, 01 Jun 2025 08:20:00 GMT", request.getHeader("If-Modified-Since"))
+    }
+}
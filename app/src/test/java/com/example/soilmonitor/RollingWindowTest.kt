@@ -0,0 +1,70 @@
+package com.example.soilmonitor
+
+import org.junit.Assert.*
+import org.junit.Test
+import kotlin.math.sqrt
+import kotlin.random.Random
+
+/**
+ * [RollingWindow] against a brute-force window over random input.
+ */
+class RollingWindowTest {
+
+    /** Stats of the readings in (last epoch - seconds, last epoch], recomputed from scratch */
+    private fun bruteForce(epochs: List<Long>, values: List<Float>, seconds: Long): RollingStats {
+        val end = epochs.last()
+        val kept = values.filterIndexed { i, _ -> epochs[i] > end - seconds }
+        val mean = kept.sumOf { it.toDouble() } / kept.size
+        val variance = kept.sumOf { (it - mean) * (it - mean) } / kept.size
+        return RollingStats(
+            seconds, kept.size, kept.minOrNull()!!, kept.maxOrNull()!!,
+            mean.toFloat(), sqrt(variance).toFloat()
+        )
+    }
+
+    private fun check(seed: Int, seconds: Long, maxStep: Int, range: Int) {
+        val random = Random(seed)
+        val window = RollingWindow(seconds)
+        val epochs = mutableListOf<Long>()
+        val values = mutableListOf<Float>()
+        var epoch = 1_748_736_000L
+        repeat(3000) {
+            // steps of 0 exercise equal epochs, large ones empty the window but for one reading
+            epoch += random.nextInt(0, maxStep)
+            // few distinct values exercise ties in the deques
+            val v = 300f + random.nextInt(range)
+            epochs += epoch
+            values += v
+            window.add(epoch, v)
+
+            val expected = bruteForce(epochs, values, seconds)
+            val actual = window.stats()
+            assertEquals("count at $it", expected.count, actual.count)
+            assertEquals("min at $it", expected.min, actual.min, 0f)
+            assertEquals("max at $it", expected.max, actual.max, 0f)
+            assertEquals("mean at $it", expected.mean, actual.mean, 1e-3f)
+            assertEquals("stddev at $it", expected.stddev, actual.stddev, 1e-2f)
+        }
+    }
+
+    @Test
+    fun matchesBruteForceOnSteadyCadence() = check(seed = 1, seconds = 3600, maxStep = 1200, range = 120)
+
+    @Test
+    fun matchesBruteForceWithTiesAndBursts() = check(seed = 2, seconds = 3600, maxStep = 600, range = 3)
+
+    @Test
+    fun matchesBruteForceWhenGapsEmptyTheWindow() = check(seed = 3, seconds = 600, maxStep = 3000, range = 50)
+
+    @Test
+    fun matchesBruteForceWhileTheRingGrows() =
+        check(seed = 4, seconds = RollingIndex.WEEK, maxStep = 1200, range = 120)
+
+    @Test
+    fun emptyWindowHasNoStats() {
+        val stats = RollingWindow(3600).stats()
+        assertEquals(0, stats.count)
+        assertTrue(stats.min.isNaN())
+        assertEquals("–", stats.describe())
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.soilmonitor
+
+import okhttp3.HttpUrl
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import java.io.Closeable
+import java.time.Instant
+import java.util.Locale
+import kotlin.math.roundToInt
+import kotlin.math.sin
+
+/**
+ * Local stand-in for the ORDS log and its long-poll `wait` endpoint, so the
+ * sync layer can be exercised offline. Rows are synthetic: one every [step]
+ * seconds from [start], slowly drying soil and a daily temperature swing,
+ * logged whenever [emit] is called.
+ *
+ * - `log` answers every row after the `$gt` date of `q` (newest only for a
+ *   descending query) in one page;
+ * - `wait` holds the request until a row after `since` is emitted, or answers
+ *   204 after `timeout` seconds.
+ */
+class StandInLogServer(
+    private val start: Long = 1_748_764_800L,      // 2025-06-01T08:00:00Z
+    private val step: Long = 600L
+) : Closeable {
+
+    private val server = MockWebServer()
+    private val lock = Object()
+    private val epochs = mutableListOf<Long>()
+    private var closed = false
+
+    val logUrl: HttpUrl get() = server.url("/ords/admin/log/log")
+    val waitUrl: HttpUrl get() = server.url("/ords/admin/log/wait")
+
+    fun start(): StandInLogServer {
+        server.dispatcher = object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse {
+                val url = request.requestUrl ?: return MockResponse().setResponseCode(400)
+                return when (url.encodedPath) {
+                    logUrl.encodedPath -> log(url)
+                    waitUrl.encodedPath -> await(url)
+                    else -> MockResponse().setResponseCode(404)
+                }
+            }
+        }
+        server.start()
+        return this
+    }
+
+    /** Log the next synthetic row, waking any waiting long-poll; returns its epoch */
+    fun emit(): Long = synchronized(lock) {
+        val epoch = start + epochs.size * step
+        epochs += epoch
+        lock.notifyAll()
+        epoch
+    }
+
+    override fun close() {
+        synchronized(lock) {
+            closed = true
+            lock.notifyAll()
+        }
+        server.shutdown()
+    }
+
+    private fun log(url: HttpUrl): MockResponse {
+        val q = url.queryParameter("q").orEmpty()
+        val since = DATE.find(q)?.groupValues?.get(1)?.let { Instant.parse(it).epochSecond }
+        val rows = synchronized(lock) { after(since ?: Long.MIN_VALUE) }
+        return page(if (q.contains("\"desc\"")) rows.takeLast(1) else rows)
+    }
+
+    private fun await(url: HttpUrl): MockResponse {
+        val since = Instant.parse(url.queryParameter("since")).epochSecond
+        val deadline = System.currentTimeMillis() + url.queryParameter("timeout")!!.toLong() * 1000
+        synchronized(lock) {
+            while (true) {
+                val rows = after(since)
+                if (rows.isNotEmpty()) return page(rows)
+                val left = deadline - System.currentTimeMillis()
+                if (closed || left <= 0) return MockResponse().setResponseCode(204)
+                lock.wait(left)
+            }
+        }
+    }
+
+    private fun after(since: Long) = epochs.filter { it > since }
+
+    private fun page(rows: List<Long>): MockResponse {
+        val items = rows.joinToString(",") { epoch ->
+            val i = (epoch - start) / step
+            val moisture = (340 + i * 0.5 + 5 * sin(i / 3.0)).roundToInt()
+            val temp = 20 + 4 * sin(2 * Math.PI * (epoch % 86_400) / 86_400)
+            """{"created_at":"${Instant.ofEpochSecond(epoch)}","sensor_u0":$moisture,""" +
+                """"sensor_temp":${"%.1f".format(Locale.US, temp)}}"""
+        }
+        return MockResponse().setBody("""{"items":[$items],"hasMore":false,"links":[]}""")
+    }
+
+    private companion object {
+        val DATE = Regex("\"\\\$date\":\"([^\"]+)\"")
+    }
+}